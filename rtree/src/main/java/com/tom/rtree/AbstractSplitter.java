@@ -1,9 +1,5 @@
 package com.tom.rtree;
 
-import static com.tom.rtree.Node.area;
-import static com.tom.rtree.Node.overlap;
-
-import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,58 +19,31 @@ public abstract class AbstractSplitter<T> {
    *
    * @param nodeToSplit the node to split
    * @param incoming the bounds of the new element
-   * @return
+   * @return the winning child, or nodeToSplit if it has no children
    */
-  protected Optional<Node<T>> leastEnlargementThenAreaThenKids(
-      InnerNode<T> nodeToSplit, Rectangle incoming) {
+  protected Node<T> leastEnlargementThenAreaThenKids(InnerNode<T> nodeToSplit, Rectangle incoming) {
     double leastEnlargement = Double.MAX_VALUE;
-    Optional<Node<T>> winner = Optional.empty();
-    Optional<Rectangle> winningUnion = Optional.empty();
-    for (Node<T> kid : nodeToSplit.getChildren()) {
-      Rectangle kidRectangle = kid.getBounds();
+    double winnerArea = 0;
+    Node<T> winner = null;
+    int size = nodeToSplit.size();
+    for (int i = 0; i < size; i++) {
+      RTreeNode<T> kid = (RTreeNode<T>) nodeToSplit.get(i);
       // how much does the kid enlarge when we enlarge it by incoming?
-      Rectangle union = kidRectangle.union(incoming);
-      double kidArea = area(kidRectangle);
-      double unionArea = area(union);
-      // this should be difference between the new union with incoming and the original kid area
-      double enlargement = unionArea - kidArea;
-      if (!winner.isPresent()) {
-        // first one is the winner
-        winner = Optional.of(kid);
-        winningUnion = Optional.of(kidRectangle);
-      }
-      double winnerArea = area(winningUnion.get());
-      if (enlargement == leastEnlargement) {
-        log.trace("we have a tie for enlargement {}", enlargement);
-        log.trace("compare the areas {} and {}", unionArea, winnerArea);
-        // a tie. see which is the smaller in area
-        if (unionArea == winnerArea) {
-          log.trace("a tie for unionArea and winnerArea, now compare child counts");
-          // a tie in area, see if kid has fewer elements/children
-          if (kid.size() < winner.get().size()) {
-            log.trace("the new kid has fewer children. choose it");
-            // kid is the new winner
-            winner = Optional.of(kid);
-            winningUnion = Optional.of(union);
-            leastEnlargement = enlargement;
-          }
-        } else if (unionArea < winnerArea) {
-          log.trace("unionArea is smaller than the previous winner");
-          // union area is smaller, choose it
-          leastEnlargement = enlargement;
-          winningUnion = Optional.of(union);
-          winner = Optional.of(kid);
-        }
-      } else if (enlargement < leastEnlargement) {
-        // new enlargement is smaller, it wins
+      double unionArea = unionArea(kid, incoming);
+      double enlargement = unionArea - area(kid);
+      if (enlargement < leastEnlargement
+          || enlargement == leastEnlargement
+              // a tie. see which is the smaller in area, then which has fewer children
+              && (unionArea < winnerArea
+                  || unionArea == winnerArea && kid.size() < winner.size())) {
         leastEnlargement = enlargement;
-        winningUnion = Optional.of(union);
-        winner = Optional.of(kid);
+        winnerArea = unionArea;
+        winner = kid;
       }
     }
     if (winner == null) {
       log.error("winner was null");
-      winner = Optional.of(nodeToSplit);
+      winner = nodeToSplit;
     }
     return winner;
   }
@@ -82,114 +51,67 @@ public abstract class AbstractSplitter<T> {
   /**
    * least overlap then least area enlargement followed by smallest area followed by fewest kids
    *
-   * @param bounds
-   * @return
+   * @param nodeToSplit the node to split
+   * @param bounds the bounds of the new element
+   * @return the winning child, or nodeToSplit if it has no children
    */
-  protected Optional<Node<T>> leastOverlapThenEnlargementThenAreaThenKids(
+  protected Node<T> leastOverlapThenEnlargementThenAreaThenKids(
       InnerNode<T> nodeToSplit, Rectangle bounds) {
     double leastOverlap = Double.MAX_VALUE;
     double leastEnlargement = Double.MAX_VALUE;
-    Optional<Node<T>> winner = Optional.empty();
-    Optional<Rectangle> winningUnion = Optional.empty();
-    String whatKind = "";
-    for (Node<T> kid : nodeToSplit.getChildren()) {
-      Rectangle kidRectangle = kid.getBounds();
-
-      double overlap = overlap(kid.getBounds(), bounds);
-      if (!winner.isPresent()) {
-        winner = Optional.of(kid);
+    double winnerArea = 0;
+    Node<T> winner = null;
+    int size = nodeToSplit.size();
+    for (int i = 0; i < size; i++) {
+      RTreeNode<T> kid = (RTreeNode<T>) nodeToSplit.get(i);
+      double overlap = overlap(kid, bounds);
+      if (winner == null) {
+        // first one is the winner
+        winner = kid;
         leastOverlap = overlap;
-        winningUnion = Optional.of(kid.getBounds().union(bounds));
-        if (log.isTraceEnabled()) {
-          whatKind = "won as first";
-          log.trace("won as first");
-        }
+        winnerArea = unionArea(kid, bounds);
       } else if (overlap == leastOverlap) {
-        log.trace("tie on overlap {} == {}", overlap, leastOverlap);
         // tie for overlap, consider enlargement
-        Rectangle union = kidRectangle.union(bounds);
-        double kidArea = area(kidRectangle);
-        double unionArea = area(union);
-        // this should be difference between the new union with incoming and the original kid area
-        double enlargement = unionArea - kidArea;
-
-        double winnerArea = area(winningUnion.get());
-        if (enlargement == leastEnlargement) {
-          log.trace("tie on enlargement {} == {}", enlargement, leastEnlargement);
-          // tie for enlargement, consider area
-          log.trace("we have a tie for enlargement {}", enlargement);
-          log.trace("compare the areas {} and {}", unionArea, winnerArea);
-          // a tie. see which is the smaller in area
-          if (unionArea == winnerArea) {
-            // tie for area, consider kid size
-            log.trace("tie on area {} == {}", unionArea, winnerArea);
-            log.trace("a tie for unionArea and winnerArea, now compare child counts");
-            // a tie in area, see if kid has fewer elements/children
-            if (kid.size() < winner.get().size()) {
-              log.trace("the new kid has fewer children. choose it");
-              // kid is the new winner
-              winner = Optional.of(kid);
-              winningUnion = Optional.of(union);
-              leastEnlargement = enlargement;
-              if (log.isTraceEnabled()) {
-                whatKind =
-                    "won on kid size < winner size ("
-                        + kid.size()
-                        + " < "
-                        + winner.get().size()
-                        + ")";
-              }
-              log.trace("won on kid size {} < {}", kid.size(), winner.get().size());
-            } else {
-              log.trace("kept winner based on kid size {} >= {}", kid.size(), winner.get().size());
-            }
-          } else if (unionArea < winnerArea) {
-            // not tie for area, pick smallest area
-            if (log.isTraceEnabled()) {
-              whatKind =
-                  "won on area unionArea < winnerArea (" + unionArea + " < " + winnerArea + ")";
-            }
-            log.trace("won on area {} < {}", unionArea, winnerArea);
-
-            // union area is smaller, choose it
-            leastEnlargement = enlargement;
-            winningUnion = Optional.of(union);
-            winner = Optional.of(kid);
-          }
-        } else if (enlargement < leastEnlargement) {
-          // not tie for enlargement, pick smallest enlargement
-          // new enlargement is smaller, it wins
-          log.trace("won on enlargement {} < {}", enlargement, leastEnlargement);
-          if (log.isTraceEnabled()) {
-            whatKind =
-                "won on enlargement < leastEnlargement ("
-                    + enlargement
-                    + " < "
-                    + leastEnlargement
-                    + ")";
-          }
+        double unionArea = unionArea(kid, bounds);
+        double enlargement = unionArea - area(kid);
+        if (enlargement < leastEnlargement
+            || enlargement == leastEnlargement
+                // tie for enlargement, consider area, then kid size
+                && (unionArea < winnerArea
+                    || unionArea == winnerArea && kid.size() < winner.size())) {
           leastEnlargement = enlargement;
-          winningUnion = Optional.of(union);
-          winner = Optional.of(kid);
+          winnerArea = unionArea;
+          winner = kid;
         }
-
       } else if (overlap < leastOverlap) {
-        log.trace("won on overlap {} < {}", overlap, leastOverlap);
-        if (log.isTraceEnabled()) {
-          whatKind = "won on overlap < leastOverlap (" + overlap + " < " + leastOverlap + ")";
-        }
         leastOverlap = overlap;
-        winner = Optional.of(kid);
+        winner = kid;
       }
     }
-    if (!winner.isPresent()) {
+    if (winner == null) {
       log.error("no winner");
-      if (log.isTraceEnabled()) {
-        whatKind = "no winner";
-      }
-      winner = Optional.of(nodeToSplit);
+      winner = nodeToSplit;
     }
-    log.trace("winning style: {}", whatKind);
     return winner;
   }
+
+  // measures of a child's bounds against the bounds of a new element, on the raw corners so that
+  // choosing a subtree makes no Rectangles
+
+  private static double area(RTreeNode<?> kid) {
+    return (kid.maxX() - kid.minX()) * (kid.maxY() - kid.minY());
+  }
+
+  /** @return the area of the union of the kid's bounds and r */
+  private static double unionArea(RTreeNode<?> kid, Rectangle r) {
+    return (Math.max(kid.maxX(), r.maxX) - Math.min(kid.minX(), r.x))
+        * (Math.max(kid.maxY(), r.maxY) - Math.min(kid.minY(), r.y));
+  }
+
+  /** @return the area of the intersection of the kid's bounds and r, zero if they are apart */
+  private static double overlap(RTreeNode<?> kid, Rectangle r) {
+    double width = Math.min(kid.maxX(), r.maxX) - Math.max(kid.minX(), r.x);
+    double height = Math.min(kid.maxY(), r.maxY) - Math.max(kid.minY(), r.y);
+    return width < 0 || height < 0 ? 0 : width * height;
+  }
 }
@@ -0,0 +1,78 @@
+package com.tom.rtree;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * a batch of adds, removes and moves to apply to an RTree at once with RTree.apply. Every remove in
+ * the batch is done before any add, so an element that is removed and added in the same batch ends
+ * up in the tree. Later changes to an element replace earlier ones in the same batch: an element
+ * moved twice is removed from where it was before the batch and added at the last new bounds, and
+ * an element added and then removed is not added at all
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public class Batch<T> {
+
+  /** the elements to remove, with the bounds they were added with or null if not known */
+  final Map<T, Rectangle> removals = new LinkedHashMap<>();
+
+  /** the elements to add with their new bounds */
+  final Map<T, Rectangle> additions = new LinkedHashMap<>();
+
+  /** @return an empty batch */
+  public static <T> Batch<T> create() {
+    return new Batch<>();
+  }
+
+  private Batch() {}
+
+  /** add an element, or change the bounds it is added with if it is already added in this batch */
+  public Batch<T> add(T element, Rectangle bounds) {
+    additions.put(element, bounds);
+    return this;
+  }
+
+  /**
+   * remove an element without knowing its bounds. Unless the tree is indexed, the whole tree may be
+   * searched for it
+   */
+  public Batch<T> remove(T element) {
+    return remove(element, null);
+  }
+
+  /**
+   * remove an element, searching first only the nodes that contain the bounds it was added with. If
+   * the bounds are stale the whole tree is searched
+   */
+  public Batch<T> remove(T element, Rectangle bounds) {
+    if (additions.remove(element) != null && !removals.containsKey(element)) {
+      // it was added in this batch, so it is not in the tree yet
+      return this;
+    }
+    if (!removals.containsKey(element)) {
+      // the first removal has the bounds the element is in the tree with
+      removals.put(element, bounds);
+    }
+    return this;
+  }
+
+  /** move an element from the bounds it was added with to new bounds */
+  public Batch<T> move(T element, Rectangle oldBounds, Rectangle newBounds) {
+    if (additions.containsKey(element)) {
+      // moved or added earlier in this batch, so only the new bounds change
+      return add(element, newBounds);
+    }
+    return remove(element, oldBounds).add(element, newBounds);
+  }
+
+  /** @return the number of adds and removes in this batch. A move counts as one of each */
+  public int size() {
+    return removals.size() + additions.size();
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+}
@@ -0,0 +1,161 @@
+package com.tom.rtree;
+
+/**
+ * the corners of a fixed number of boxes, packed into one primitive array. Box i is stored as minX,
+ * minY, maxX, maxY at slots 4 * i to 4 * i + 3
+ *
+ * @author Tom Nelson
+ */
+abstract class BoxArray {
+
+  /**
+   * @param size the number of boxes
+   * @param precision how the corners are stored
+   * @return an array of size boxes, all at the origin
+   */
+  static BoxArray create(int size, Precision precision) {
+    return precision == Precision.FLOAT ? new Floats(size) : new Doubles(size);
+  }
+
+  abstract Precision precision();
+
+  /** @return the number of boxes */
+  abstract int size();
+
+  /** @return the value in slot k, which is coordinate k % 4 of box k / 4 */
+  abstract double get(int k);
+
+  abstract void set(int i, Rectangle r);
+
+  Rectangle rectangle(int i) {
+    return Rectangle.fromCorners(get(4 * i), get(4 * i + 1), get(4 * i + 2), get(4 * i + 3));
+  }
+
+  abstract boolean contains(int i, double x, double y);
+
+  abstract boolean intersects(int i, double minX, double minY, double maxX, double maxY);
+
+  abstract double squaredDistance(int i, double x, double y);
+
+  /** exact corners */
+  static final class Doubles extends BoxArray {
+
+    private final double[] corners;
+
+    Doubles(int size) {
+      corners = new double[4 * size];
+    }
+
+    @Override
+    Precision precision() {
+      return Precision.DOUBLE;
+    }
+
+    @Override
+    int size() {
+      return corners.length / 4;
+    }
+
+    @Override
+    double get(int k) {
+      return corners[k];
+    }
+
+    @Override
+    void set(int i, Rectangle r) {
+      corners[4 * i] = r.x;
+      corners[4 * i + 1] = r.y;
+      corners[4 * i + 2] = r.maxX;
+      corners[4 * i + 3] = r.maxY;
+    }
+
+    @Override
+    boolean contains(int i, double x, double y) {
+      return x >= corners[4 * i]
+          && x <= corners[4 * i + 2]
+          && y >= corners[4 * i + 1]
+          && y <= corners[4 * i + 3];
+    }
+
+    @Override
+    boolean intersects(int i, double minX, double minY, double maxX, double maxY) {
+      return corners[4 * i + 2] >= minX
+          && maxX >= corners[4 * i]
+          && corners[4 * i + 3] >= minY
+          && maxY >= corners[4 * i + 1];
+    }
+
+    @Override
+    double squaredDistance(int i, double x, double y) {
+      return Circle.squaredDistance(
+          x, y, corners[4 * i], corners[4 * i + 1], corners[4 * i + 2], corners[4 * i + 3]);
+    }
+  }
+
+  /** corners rounded outward to floats */
+  static final class Floats extends BoxArray {
+
+    private final float[] corners;
+
+    Floats(int size) {
+      corners = new float[4 * size];
+    }
+
+    @Override
+    Precision precision() {
+      return Precision.FLOAT;
+    }
+
+    @Override
+    int size() {
+      return corners.length / 4;
+    }
+
+    @Override
+    double get(int k) {
+      return corners[k];
+    }
+
+    @Override
+    void set(int i, Rectangle r) {
+      corners[4 * i] = down(r.x);
+      corners[4 * i + 1] = down(r.y);
+      corners[4 * i + 2] = up(r.maxX);
+      corners[4 * i + 3] = up(r.maxY);
+    }
+
+    /** @return the largest float that is not more than d */
+    static float down(double d) {
+      float f = (float) d;
+      return f > d ? Math.nextDown(f) : f;
+    }
+
+    /** @return the smallest float that is not less than d */
+    static float up(double d) {
+      float f = (float) d;
+      return f < d ? Math.nextUp(f) : f;
+    }
+
+    @Override
+    boolean contains(int i, double x, double y) {
+      return x >= corners[4 * i]
+          && x <= corners[4 * i + 2]
+          && y >= corners[4 * i + 1]
+          && y <= corners[4 * i + 3];
+    }
+
+    @Override
+    boolean intersects(int i, double minX, double minY, double maxX, double maxY) {
+      return corners[4 * i + 2] >= minX
+          && maxX >= corners[4 * i]
+          && corners[4 * i + 3] >= minY
+          && maxY >= corners[4 * i + 1];
+    }
+
+    @Override
+    double squaredDistance(int i, double x, double y) {
+      return Circle.squaredDistance(
+          x, y, corners[4 * i], corners[4 * i + 1], corners[4 * i + 2], corners[4 * i + 3]);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package com.tom.rtree;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a fixed number of pages of a PageFile held in memory. A page that is not in the pool is read from
+ * the file, and when the pool is full another page is evicted to make room for it. Changed pages
+ * are only written back when they are evicted or the pool is flushed. Not thread safe
+ *
+ * @author Tom Nelson
+ */
+class BufferPool {
+
+  private static final Logger log = LoggerFactory.getLogger(BufferPool.class);
+
+  /** a page held in the pool */
+  private static class Frame {
+    final int pageId;
+    final byte[] page;
+    boolean dirty;
+    boolean referenced;
+
+    Frame(int pageId, byte[] page) {
+      this.pageId = pageId;
+      this.page = page;
+    }
+  }
+
+  private final PageFile file;
+  private final int capacity;
+  private final EvictionPolicy policy;
+
+  /** for LRU, iteration order is least recently used first */
+  private final Map<Integer, Frame> frames;
+
+  /** for CLOCK, the frames in the order the hand sweeps them */
+  private final Frame[] clock;
+
+  private int hand;
+  private long hits;
+  private long misses;
+  private long writes;
+
+  BufferPool(PageFile file, int capacity, EvictionPolicy policy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1 but was " + capacity);
+    }
+    this.file = file;
+    this.capacity = capacity;
+    this.policy = policy;
+    this.frames =
+        policy == EvictionPolicy.LRU ? new LinkedHashMap<>(16, .75f, true) : new HashMap<>();
+    this.clock = policy == EvictionPolicy.CLOCK ? new Frame[capacity] : null;
+  }
+
+  /**
+   * @param pageId the page to get
+   * @return the bytes of the page. They may be changed in place, and markDirty must be called
+   *     before the page is used again or evicted
+   */
+  byte[] get(int pageId) throws IOException {
+    Frame frame = frames.get(pageId);
+    if (frame != null) {
+      hits++;
+      frame.referenced = true;
+      return frame.page;
+    }
+    misses++;
+    byte[] page = new byte[file.pageSize];
+    file.read(pageId, page);
+    return admit(new Frame(pageId, page)).page;
+  }
+
+  /**
+   * @param pageId a new page that is not in the file yet
+   * @return the bytes of the page, all zero. The page is already marked dirty
+   */
+  byte[] create(int pageId) throws IOException {
+    Frame frame = admit(new Frame(pageId, new byte[file.pageSize]));
+    frame.dirty = true;
+    return frame.page;
+  }
+
+  /** @param pageId a page in the pool whose bytes were changed */
+  void markDirty(int pageId) {
+    Frame frame = frames.get(pageId);
+    if (frame == null) {
+      throw new IllegalStateException("page " + pageId + " is not in the pool");
+    }
+    frame.dirty = true;
+  }
+
+  private Frame admit(Frame frame) throws IOException {
+    frame.referenced = true;
+    if (policy == EvictionPolicy.LRU) {
+      if (frames.size() == capacity) {
+        Iterator<Frame> eldest = frames.values().iterator();
+        evict(eldest.next());
+        eldest.remove();
+      }
+    } else {
+      if (frames.size() == capacity) {
+        while (clock[hand].referenced) {
+          clock[hand].referenced = false;
+          hand = (hand + 1) % capacity;
+        }
+        evict(clock[hand]);
+        frames.remove(clock[hand].pageId);
+      } else {
+        hand = frames.size();
+      }
+      clock[hand] = frame;
+      hand = (hand + 1) % capacity;
+    }
+    frames.put(frame.pageId, frame);
+    return frame;
+  }
+
+  private void evict(Frame frame) throws IOException {
+    log.trace("evict page {}, dirty is {}", frame.pageId, frame.dirty);
+    if (frame.dirty) {
+      file.write(frame.pageId, frame.page);
+      writes++;
+    }
+  }
+
+  /** write all the changed pages back to the file */
+  void flush() throws IOException {
+    for (Frame frame : frames.values()) {
+      if (frame.dirty) {
+        file.write(frame.pageId, frame.page);
+        frame.dirty = false;
+        writes++;
+      }
+    }
+    file.sync();
+  }
+
+  long getHits() {
+    return hits;
+  }
+
+  long getMisses() {
+    return misses;
+  }
+
+  long getWrites() {
+    return writes;
+  }
+}
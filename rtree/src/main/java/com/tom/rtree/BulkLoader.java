@@ -0,0 +1,21 @@
+package com.tom.rtree;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * interface for classes that pack a collection of entries into a complete R-Tree from the bottom up
+ * (or top down), without any calls to the splitters
+ *
+ * @param <T> the type of element stored in the RTree
+ * @author Tom Nelson
+ */
+public interface BulkLoader<T> {
+
+  /**
+   * @param splitterContext the rules for the tree that will be built
+   * @param entries the (non-empty) entries to pack. The list may be re-ordered by the loader
+   * @return the root of the newly built tree, either a LeafNode or an InnerNode
+   */
+  Node<T> load(SplitterContext<T> splitterContext, List<Map.Entry<T, Rectangle>> entries);
+}
@@ -60,21 +60,30 @@ public class Circle {
    * @param r rectangle to test
    * @return the distance squared
    */
-  private static double squaredDistance(Point p, Rectangle r) {
+  static double squaredDistance(Point p, Rectangle r) {
+    return squaredDistance(p.x, p.y, r.x, r.y, r.maxX, r.maxY);
+  }
+
+  /**
+   * Compute the squared distance between the passed coordinates and the rectangle with the passed
+   * corners
+   *
+   * @return the distance squared, or zero if the point is inside the rectangle
+   */
+  static double squaredDistance(
+      double px, double py, double minX, double minY, double maxX, double maxY) {
     double distSq = 0;
-    double cx = p.x;
-    if (cx < r.x) {
-      distSq += (r.x - cx) * (r.x - cx);
+    if (px < minX) {
+      distSq += (minX - px) * (minX - px);
     }
-    if (cx > r.maxX) {
-      distSq += (cx - r.maxX) * (cx - r.maxX);
+    if (px > maxX) {
+      distSq += (px - maxX) * (px - maxX);
     }
-    double cy = p.y;
-    if (cy < r.y) {
-      distSq += (r.y - cy) * (r.y - cy);
+    if (py < minY) {
+      distSq += (minY - py) * (minY - py);
     }
-    if (cy > r.maxY) {
-      distSq += (cy - r.maxY) * (cy - r.maxY);
+    if (py > maxY) {
+      distSq += (py - maxY) * (py - maxY);
     }
     return distSq;
   }
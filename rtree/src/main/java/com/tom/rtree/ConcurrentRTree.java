@@ -0,0 +1,182 @@
+package com.tom.rtree;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a thread safe RTree. Changes take the write lock of a StampedLock. Queries first run under an
+ * optimistic read, with no lock at all, and keep the result if no write happened in the meantime. A
+ * query that overlapped a write, or that failed because the nodes changed under it, is run again
+ * under the read lock.
+ *
+ * <p>Only queries that return a result are offered, so that a query that overlapped a write never
+ * shows anything to the caller before it is validated.
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public class ConcurrentRTree<T> {
+
+  private static final Logger log = LoggerFactory.getLogger(ConcurrentRTree.class);
+
+  /** how many optimistic reads are tried before taking the read lock */
+  static final int OPTIMISTIC_ATTEMPTS = 2;
+
+  private final StampedLock lock = new StampedLock();
+  private final SplitterContext<T> splitterContext;
+  private final LongAdder optimisticReads = new LongAdder();
+  private final LongAdder lockedReads = new LongAdder();
+  private RTree<T> rtree;
+
+  /**
+   * @param splitterContext the R*Tree or R-Tree rules for the changes
+   * @return an empty, thread safe R-Tree
+   */
+  public static <T> ConcurrentRTree<T> create(SplitterContext<T> splitterContext) {
+    return new ConcurrentRTree<>(RTree.create(), splitterContext);
+  }
+
+  /**
+   * @param rtree the tree to guard. It must not be used except through the ConcurrentRTree
+   * @param splitterContext the R*Tree or R-Tree rules for the changes
+   * @return a thread safe R-Tree
+   */
+  public static <T> ConcurrentRTree<T> of(RTree<T> rtree, SplitterContext<T> splitterContext) {
+    return new ConcurrentRTree<>(rtree, splitterContext);
+  }
+
+  private ConcurrentRTree(RTree<T> rtree, SplitterContext<T> splitterContext) {
+    this.rtree = rtree;
+    this.splitterContext = splitterContext;
+  }
+
+  public void add(T element, Rectangle bounds) {
+    write(tree -> RTree.add(tree, splitterContext, element, bounds));
+  }
+
+  public void addAll(Collection<Map.Entry<T, Rectangle>> entries) {
+    write(tree -> RTree.addAll(tree, splitterContext, entries));
+  }
+
+  public void remove(T element) {
+    write(tree -> RTree.remove(tree, element));
+  }
+
+  public void remove(T element, Rectangle bounds) {
+    write(tree -> RTree.remove(tree, element, bounds));
+  }
+
+  public void update(T element, Rectangle oldBounds, Rectangle newBounds) {
+    write(tree -> RTree.update(tree, splitterContext, element, oldBounds, newBounds));
+  }
+
+  private void write(Function<RTree<T>, RTree<T>> change) {
+    long stamp = lock.writeLock();
+    try {
+      rtree = change.apply(rtree);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * @param p point to search
+   * @return an element that contains p or null
+   */
+  public T getPickedObject(Point p) {
+    return read(tree -> tree.getRoot().isPresent() ? tree.getPickedObject(p) : null);
+  }
+
+  /**
+   * @param shape a shape to filter the elements
+   * @return the elements whose bounds intersect with the passed shape
+   */
+  public Set<T> getVisibleElements(Rectangle shape) {
+    return read(
+        tree ->
+            tree.getRoot().isPresent()
+                ? tree.getRoot().get().getVisibleElements(new HashSet<>(), shape)
+                : new HashSet<>());
+  }
+
+  /**
+   * @param p the Point to measure from
+   * @param k the most elements to return
+   * @return up to k elements in ascending order of the distance from p to their bounds
+   */
+  public List<T> nearest(Point p, int k) {
+    return read(tree -> tree.nearest(p, k));
+  }
+
+  /**
+   * @param shape the shape to count elements in
+   * @return the number of elements whose bounds intersect with the passed shape
+   */
+  public int countIn(Rectangle shape) {
+    return read(tree -> tree.countIn(shape));
+  }
+
+  /** @return the number of elements in the tree */
+  public int count() {
+    return read(RTree::count);
+  }
+
+  /** @return how many queries were answered by an optimistic read */
+  public long getOptimisticReads() {
+    return optimisticReads.sum();
+  }
+
+  /** @return how many queries had to take the read lock */
+  public long getLockedReads() {
+    return lockedReads.sum();
+  }
+
+  private <R> R read(Function<RTree<T>, R> query) {
+    for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp == 0) {
+        // a write is in progress
+        break;
+      }
+      try {
+        RTree<T> tree = rtree;
+        R result = query.apply(tree);
+        if (lock.validate(stamp)) {
+          optimisticReads.increment();
+          return result;
+        }
+      } catch (RuntimeException ex) {
+        // the nodes changed during the query. Only a valid stamp makes this a real failure
+        if (lock.validate(stamp)) {
+          throw ex;
+        }
+        log.trace("optimistic read failed with {}", ex.toString());
+      }
+    }
+    long stamp = lock.readLock();
+    try {
+      lockedReads.increment();
+      return query.apply(rtree);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentRTree{"
+        + "optimisticReads="
+        + getOptimisticReads()
+        + ", lockedReads="
+        + getLockedReads()
+        + '}';
+  }
+}
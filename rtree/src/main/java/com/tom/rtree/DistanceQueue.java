@@ -0,0 +1,72 @@
+package com.tom.rtree;
+
+import java.util.Arrays;
+
+/**
+ * a binary min-heap of int ids keyed on squared distance, for the best-first nearest neighbor
+ * searches of the packed trees. Ids and keys are kept in primitive arrays so that queueing a node
+ * or an entry does not allocate
+ *
+ * @author Tom Nelson
+ */
+class DistanceQueue {
+
+  private double[] keys = new double[64];
+  private int[] ids = new int[64];
+  private int size;
+
+  /**
+   * @param key the squared distance of the id
+   * @param id the node or entry to queue
+   * @param maxKey ids with a key greater than this are not queued
+   */
+  void offer(double key, int id, double maxKey) {
+    if (key > maxKey) {
+      return;
+    }
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+      ids = Arrays.copyOf(ids, size * 2);
+    }
+    int i = size++;
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (keys[parent] <= key) {
+        break;
+      }
+      keys[i] = keys[parent];
+      ids[i] = ids[parent];
+      i = parent;
+    }
+    keys[i] = key;
+    ids[i] = id;
+  }
+
+  /** @return the id with the smallest key, which is removed from the queue */
+  int poll() {
+    int id = ids[0];
+    double key = keys[--size];
+    int last = ids[size];
+    int i = 0;
+    int half = size >>> 1;
+    while (i < half) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && keys[child + 1] < keys[child]) {
+        child++;
+      }
+      if (key <= keys[child]) {
+        break;
+      }
+      keys[i] = keys[child];
+      ids[i] = ids[child];
+      i = child;
+    }
+    keys[i] = key;
+    ids[i] = last;
+    return id;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+}
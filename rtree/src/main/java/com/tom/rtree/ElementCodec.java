@@ -0,0 +1,32 @@
+package com.tom.rtree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * writes and reads the elements of an RTree for RTreeSnapshot
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public interface ElementCodec<T> {
+
+  void write(T element, DataOutput out) throws IOException;
+
+  T read(DataInput in) throws IOException;
+
+  /** a codec for String elements */
+  ElementCodec<String> STRING =
+      new ElementCodec<>() {
+        @Override
+        public void write(String element, DataOutput out) throws IOException {
+          out.writeUTF(element);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+          return in.readUTF();
+        }
+      };
+}
@@ -0,0 +1,20 @@
+package com.tom.rtree;
+
+/**
+ * a callback for the elements found by a query. The query stops as soon as the visitor returns
+ * false, and nothing is collected, so a visitor that does not allocate makes a query that does not
+ * allocate
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+@FunctionalInterface
+public interface ElementVisitor<T> {
+
+  /**
+   * @param element an element that matches the query
+   * @param bounds the bounds of the element
+   * @return true to keep visiting, false to stop the query
+   */
+  boolean visit(T element, Rectangle bounds);
+}
@@ -0,0 +1,16 @@
+package com.tom.rtree;
+
+/**
+ * how a full BufferPool chooses the page to evict
+ *
+ * @author Tom Nelson
+ */
+public enum EvictionPolicy {
+  /** evict the page that was used least recently */
+  LRU,
+  /**
+   * sweep a clock hand over the pages, clearing the referenced bit of each page it passes and
+   * evicting the first page that was not referenced since the last sweep
+   */
+  CLOCK
+}
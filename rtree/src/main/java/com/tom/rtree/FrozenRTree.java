@@ -0,0 +1,248 @@
+package com.tom.rtree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a read-only snapshot of an RTree packed into arrays.
+ *
+ * <p>The nodes are numbered breadth first, so the children of every InnerNode are a contiguous run
+ * of node numbers and the entries of every LeafNode are a contiguous run of entry numbers. The
+ * bounds of node i are at nodeBounds[4 * i] to nodeBounds[4 * i + 3] as minX, minY, maxX, maxY, and
+ * its children (or, for a leaf, its entries) are numbered from childRanges[2 * i] up to but not
+ * including childRanges[2 * i + 1]. The bounds of the entries are laid out the same way in
+ * entryBounds, and the elements are in elements. A query reads neighboring array slots instead of
+ * following references from node to node.
+ *
+ * <p>With Precision.FLOAT the corners are floats rounded outward, which halves the memory for the
+ * bounds. Queries stay conservative: they never miss an element, but may include one that is within
+ * rounding of the query, and nearest orders by the distance to the rounded bounds.
+ *
+ * <p>The snapshot does not change when the RTree it was made from changes.
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public class FrozenRTree<T> {
+
+  final BoxArray nodeBounds;
+  final int[] childRanges;
+  final boolean[] leafNodes;
+  final BoxArray entryBounds;
+  final Object[] elements;
+
+  /**
+   * @param root the root of the tree to copy, or null for an empty snapshot
+   * @return a snapshot of the tree
+   */
+  static <T> FrozenRTree<T> of(Node<T> root) {
+    return of(root, Precision.DOUBLE);
+  }
+
+  /**
+   * @param root the root of the tree to copy, or null for an empty snapshot
+   * @param precision how the corners of the bounds are stored
+   * @return a snapshot of the tree
+   */
+  static <T> FrozenRTree<T> of(Node<T> root, Precision precision) {
+    if (root == null) {
+      return new FrozenRTree<>(new ArrayList<>(), 0, precision);
+    }
+    // number the nodes breadth first
+    List<Node<T>> nodes = new ArrayList<>();
+    Deque<Node<T>> queue = new ArrayDeque<>();
+    queue.add(root);
+    while (!queue.isEmpty()) {
+      Node<T> node = queue.poll();
+      nodes.add(node);
+      if (node instanceof InnerNode) {
+        queue.addAll(((InnerNode<T>) node).getChildren());
+      }
+    }
+    return new FrozenRTree<>(nodes, root.count(), precision);
+  }
+
+  private FrozenRTree(List<Node<T>> nodes, int count, Precision precision) {
+    int nodeCount = nodes.size();
+    nodeBounds = BoxArray.create(nodeCount, precision);
+    childRanges = new int[2 * nodeCount];
+    leafNodes = new boolean[nodeCount];
+    entryBounds = BoxArray.create(count, precision);
+    elements = new Object[count];
+    int nextChild = 1;
+    int nextEntry = 0;
+    for (int i = 0; i < nodeCount; i++) {
+      Node<T> node = nodes.get(i);
+      nodeBounds.set(i, node.getBounds());
+      if (node instanceof LeafNode) {
+        leafNodes[i] = true;
+        childRanges[2 * i] = nextEntry;
+        for (Map.Entry<T, Rectangle> entry : ((LeafNode<T>) node).map.entrySet()) {
+          entryBounds.set(nextEntry, entry.getValue());
+          elements[nextEntry++] = entry.getKey();
+        }
+        childRanges[2 * i + 1] = nextEntry;
+      } else {
+        childRanges[2 * i] = nextChild;
+        nextChild += node.size();
+        childRanges[2 * i + 1] = nextChild;
+      }
+    }
+  }
+
+  /** @return how the corners of the bounds are stored */
+  public Precision getPrecision() {
+    return nodeBounds.precision();
+  }
+
+  /** @return the number of elements in the snapshot */
+  public int count() {
+    return elements.length;
+  }
+
+  /** @return the bounds of all the elements, or Rectangle.IDENTITY if there are none */
+  public Rectangle getBounds() {
+    if (elements.length == 0) {
+      return Rectangle.IDENTITY;
+    }
+    return nodeBounds.rectangle(0);
+  }
+
+  /**
+   * @param p point to search
+   * @return an element whose bounds contain p, or null
+   */
+  public T getPickedObject(Point p) {
+    if (elements.length == 0) {
+      return null;
+    }
+    int entry = pick(0, p.x, p.y);
+    return entry < 0 ? null : element(entry);
+  }
+
+  /** @return the number of an entry below node i that contains x, y or -1 */
+  private int pick(int i, double x, double y) {
+    if (!nodeBounds.contains(i, x, y)) {
+      return -1;
+    }
+    int start = childRanges[2 * i];
+    int end = childRanges[2 * i + 1];
+    for (int j = start; j < end; j++) {
+      if (leafNodes[i]) {
+        if (entryBounds.contains(j, x, y)) {
+          return j;
+        }
+      } else {
+        int picked = pick(j, x, y);
+        if (picked >= 0) {
+          return picked;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param shape a shape to filter the elements
+   * @return the elements whose bounds intersect with the passed shape
+   */
+  public List<T> getVisibleElements(Rectangle shape) {
+    List<T> visibleElements = new ArrayList<>();
+    visitVisibleElements(shape, (element, bounds) -> visibleElements.add(element));
+    return visibleElements;
+  }
+
+  /**
+   * @param shape the shape to search
+   * @param visitor called with each element whose bounds intersect with the shape. The Rectangle
+   *     passed to the visitor is made from the packed corners for each call
+   * @return false if the visitor stopped the search, true otherwise
+   */
+  public boolean visitVisibleElements(Rectangle shape, ElementVisitor<T> visitor) {
+    return elements.length == 0 || visit(0, shape.x, shape.y, shape.maxX, shape.maxY, visitor);
+  }
+
+  private boolean visit(
+      int i, double minX, double minY, double maxX, double maxY, ElementVisitor<T> visitor) {
+    if (!nodeBounds.intersects(i, minX, minY, maxX, maxY)) {
+      return true;
+    }
+    int start = childRanges[2 * i];
+    int end = childRanges[2 * i + 1];
+    for (int j = start; j < end; j++) {
+      if (leafNodes[i]) {
+        if (entryBounds.intersects(j, minX, minY, maxX, maxY)
+            && !visitor.visit(element(j), entryBounds.rectangle(j))) {
+          return false;
+        }
+      } else if (!visit(j, minX, minY, maxX, maxY, visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param p the Point to measure from
+   * @param k the most elements to return
+   * @return up to k elements in ascending order of the distance from p to their bounds
+   */
+  public List<T> nearest(Point p, int k) {
+    return nearest(p, k, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * best-first search, as in RTree.nearest, with a queue of node and entry numbers. Entry j is
+   * queued as -1 - j
+   *
+   * @param p the Point to measure from
+   * @param k the most elements to return
+   * @param maxDistance the farthest an element's bounds may be from p
+   * @return up to k elements in ascending order of the distance from p to their bounds
+   */
+  public List<T> nearest(Point p, int k, double maxDistance) {
+    if (k < 0) {
+      throw new IllegalArgumentException("k must not be negative but was " + k);
+    }
+    List<T> nearest = new ArrayList<>(Math.min(k, elements.length));
+    if (k == 0 || elements.length == 0) {
+      return nearest;
+    }
+    double maxDistanceSquared = maxDistance * maxDistance;
+    DistanceQueue queue = new DistanceQueue();
+    queue.offer(nodeBounds.squaredDistance(0, p.x, p.y), 0, maxDistanceSquared);
+    while (!queue.isEmpty()) {
+      int id = queue.poll();
+      if (id < 0) {
+        nearest.add(element(-1 - id));
+        if (nearest.size() == k) {
+          break;
+        }
+        continue;
+      }
+      int start = childRanges[2 * id];
+      int end = childRanges[2 * id + 1];
+      for (int j = start; j < end; j++) {
+        if (leafNodes[id]) {
+          queue.offer(entryBounds.squaredDistance(j, p.x, p.y), -1 - j, maxDistanceSquared);
+        } else {
+          queue.offer(nodeBounds.squaredDistance(j, p.x, p.y), j, maxDistanceSquared);
+        }
+      }
+    }
+    return nearest;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T element(int j) {
+    return (T) elements[j];
+  }
+
+  @Override
+  public String toString() {
+    return "FrozenRTree{" + "nodes=" + leafNodes.length + ", elements=" + elements.length + '}';
+  }
+}
@@ -14,14 +14,34 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
 
   private static final Logger log = LoggerFactory.getLogger(InnerNode.class);
 
-  private Optional<Rectangle> bounds = Optional.empty();
+  /** the corners of the union of the children. All zero when there are no children */
+  private double minX;
+
+  private double minY;
+  private double maxX;
+  private double maxY;
+
+  /** false until the first child or element is added */
+  private boolean bounded;
+
+  /**
+   * the corners as a Rectangle, made when asked for and dropped when the corners change. Checked
+   * against the corners before it is used
+   */
+  private Rectangle bounds;
 
   /** child nodes of this InnerNode */
-  private List<Node<T>> children;
+  private final List<Node<T>> children;
+
+  /** the read only view of children that getChildren returns */
+  private final List<Node<T>> childrenView;
 
   /** true if the child nodes are LeafNodes. false otherwise */
   private final boolean leafChildren;
 
+  /** the number of elements in the LeafNodes below this node */
+  private int count;
+
   /**
    * create a new InnerNode with one child
    *
@@ -55,6 +75,18 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
     return new InnerNode(nodes);
   }
 
+  /**
+   * create a new InnerNode for a persistent RTree that holds nodes of an earlier version. The
+   * parents of the nodes are not changed, so the earlier version still describes itself
+   *
+   * @param nodes the children for the new InnerNode
+   * @param <T> the type of the Node
+   * @return the newly created InnerNode
+   */
+  static <T> InnerNode<T> sharing(Collection<Node<T>> nodes) {
+    return new InnerNode<>(nodes, false);
+  }
+
   /**
    * create an InnerNode with the passed Node as the first child
    *
@@ -65,7 +97,9 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
     updateBounds(node.getBounds());
     leafChildren = node instanceof LeafNode;
     children = new ArrayList();
+    childrenView = Collections.unmodifiableList(children);
     children.add(node);
+    count = node.count();
   }
 
   /**
@@ -74,13 +108,25 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
    * @param nodes the children for the new InnerNode
    */
   InnerNode(Collection<Node<T>> nodes) {
+    this(nodes, true);
+  }
+
+  /**
+   * @param nodes the children for the new InnerNode
+   * @param adopt true to make this the parent of the nodes
+   */
+  private InnerNode(Collection<Node<T>> nodes, boolean adopt) {
     children = new ArrayList<>();
+    childrenView = Collections.unmodifiableList(children);
     Node<T> sample = null;
     for (Node<T> node : nodes) {
       sample = node;
-      node.setParent(this);
+      if (adopt) {
+        node.setParent(this);
+      }
       updateBounds(node.getBounds());
       children.add(node);
+      count += node.count();
     }
     leafChildren = sample instanceof LeafNode; // ugh
   }
@@ -107,7 +153,7 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
 
   /** @return an immutable collection of the child nodes */
   public List<Node<T>> getChildren() {
-    return Collections.unmodifiableList(children);
+    return childrenView;
   }
 
   /**
@@ -116,7 +162,45 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
    */
   @Override
   public Rectangle getBounds() {
-    return bounds.orElse(Rectangle.IDENTITY);
+    if (!bounded) {
+      return Rectangle.IDENTITY;
+    }
+    double minX = this.minX;
+    double minY = this.minY;
+    double maxX = this.maxX;
+    double maxY = this.maxY;
+    Rectangle bounds = this.bounds;
+    // an optimistic reader in ConcurrentRTree may have cached a Rectangle from corners that a
+    // writer changed since, so the cache is only used while it still matches the corners
+    if (bounds == null
+        || bounds.x != minX
+        || bounds.y != minY
+        || bounds.maxX != maxX
+        || bounds.maxY != maxY) {
+      bounds = Rectangle.fromCorners(minX, minY, maxX, maxY);
+      this.bounds = bounds;
+    }
+    return bounds;
+  }
+
+  @Override
+  double minX() {
+    return minX;
+  }
+
+  @Override
+  double minY() {
+    return minY;
+  }
+
+  @Override
+  double maxX() {
+    return maxX;
+  }
+
+  @Override
+  double maxY() {
+    return maxY;
   }
 
   public Point centerOfGravity() {
@@ -139,7 +223,7 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
    */
   @Override
   public Node<T> recalculateBounds() {
-    bounds = Optional.empty();
+    clearBounds();
     int size = children.size();
     for (int i = 0; i < size; i++) {
       updateBounds(children.get(i).getBounds());
@@ -150,6 +234,21 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
     return this;
   }
 
+  /**
+   * recompute the bounding box and the count of this InnerNode from its children, without climbing
+   * to the parent
+   */
+  void recalculate() {
+    clearBounds();
+    count = 0;
+    int size = children.size();
+    for (int i = 0; i < size; i++) {
+      Node<T> child = children.get(i);
+      updateBounds(child.getBounds());
+      count += child.count();
+    }
+  }
+
   /**
    * @param p the point to search
    * @return the element in the Leaf node that is contained by p
@@ -210,16 +309,20 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
   }
 
   /**
+   * search only the child nodes whose bounds contain the element's bounds
+   *
    * @param element the element to look for
+   * @param bounds the bounds the element was added with
    * @return the LeafNode that contains the element
    */
-  LeafNode<T> getContainingLeaf(T element, Rectangle bounds) {
+  @Override
+  public LeafNode<T> getContainingLeaf(T element, Rectangle bounds) {
     LeafNode<T> containingLeaf = null;
     int size = children.size();
     for (int i = 0; i < size; i++) {
       Node<T> node = children.get(i);
-      if (node.getBounds().intersects(bounds)) {
-        containingLeaf = node.getContainingLeaf(element);
+      if (node.getBounds().contains(bounds)) {
+        containingLeaf = node.getContainingLeaf(element, bounds);
         if (containingLeaf != null) {
           break;
         }
@@ -283,13 +386,28 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
     children.addAll(collection);
   }
 
+  /** grow the corners to include r. Nothing is allocated */
   private void updateBounds(Rectangle r) {
-    if (bounds.isPresent()) {
-      bounds = Optional.of(bounds.get().union(r));
-    } else {
-      bounds = Optional.of(r);
+    if (!bounded) {
+      minX = r.x;
+      minY = r.y;
+      maxX = r.maxX;
+      maxY = r.maxY;
+      bounded = true;
+      bounds = r;
+    } else if (r.x < minX || r.y < minY || r.maxX > maxX || r.maxY > maxY) {
+      minX = Math.min(minX, r.x);
+      minY = Math.min(minY, r.y);
+      maxX = Math.max(maxX, r.maxX);
+      maxY = Math.max(maxY, r.maxY);
+      bounds = null;
     }
-    Rectangle b = bounds.get();
+  }
+
+  private void clearBounds() {
+    minX = minY = maxX = maxY = 0;
+    bounded = false;
+    bounds = null;
   }
 
   /**
@@ -300,21 +418,20 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
    */
   @Override
   public Node<T> add(SplitterContext<T> splitterContext, T element, Rectangle bounds) {
-    // update bounds with the new element's bounds
+    enlarge(bounds);
+    Node<T> pathToFollow = splitterContext.splitter.chooseSubtree(this, element, bounds);
+    Node<T> node = pathToFollow.add(splitterContext, element, bounds);
+    return node.getParent().orElse(node);
+  }
+
+  /**
+   * update the bounds and count of this node for an element that is about to be added below it
+   *
+   * @param bounds the bounds of the element to add
+   */
+  void enlarge(Rectangle bounds) {
     updateBounds(bounds);
-    Optional<Node<T>> pathToFollow = splitterContext.splitter.chooseSubtree(this, element, bounds);
-    if (pathToFollow.isPresent()) {
-      // is pathToFollow the same as this?
-      //      if (pathToFollow.get().equals(this)) {
-      //        log.trace("pathToFollow is this");
-      //        return this.getParent().orElse(this);
-      //      }
-      Node<T> node = pathToFollow.get().add(splitterContext, element, bounds);
-      return node.getParent().orElse(node);
-    } else {
-      log.error("no path to follow");
-    }
-    return null;
+    count++;
   }
 
   /**
@@ -354,6 +471,17 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
   void addNode(Node<T> node) {
     //    Preconditions.checkArgument(node != this, "Attempt to add self as child");
     //    Preconditions.checkArgument(!children.contains(node), "Attempt to add duplicate child");
+    attach(node);
+    count += node.count();
+  }
+
+  /**
+   * add a child node without changing the count. Used for the halves of a split child, whose
+   * elements are already counted
+   *
+   * @param node
+   */
+  private void attach(Node<T> node) {
     node.setParent(this);
     updateBounds(node.getBounds());
     children.add(node);
@@ -367,6 +495,7 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
    */
   void removeNode(Node<T> node) {
     children.remove(node);
+    count -= node.count();
     if (children.isEmpty() && parent.isPresent()) {
       ((InnerNode<T>) parent.get()).removeNode(this);
     }
@@ -381,10 +510,24 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
    * @return
    */
   InnerNode<T> replaceNode(Node<T> goner, SplitterContext<T> splitterContext, Node<T>... nodes) {
-    children.remove(goner); // no recalculation of size or parent remove, since we immediately add
+    // no recalculation of size, count or parent remove, since we immediately add. The count was
+    // raised on the way down for the new element, which is now in one of the nodes
+    children.remove(goner);
     return add(splitterContext, nodes);
   }
 
+  /**
+   * add delta to the count of this node and all of its ancestors
+   *
+   * @param delta the change in the number of elements below this node
+   */
+  void countChanged(int delta) {
+    count += delta;
+    if (parent.isPresent()) {
+      ((InnerNode<T>) parent.get()).countChanged(delta);
+    }
+  }
+
   InnerNode<T> add(SplitterContext<T> splitterContext, Node<T>... nodes) {
     InnerNode<T> top = this;
     for (Node<T> node : nodes) {
@@ -406,9 +549,10 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
 
     updateBounds(node.getBounds());
 
-    if (size() > M) {
+    if (size() >= splitterContext.config.innerMaxEntries) {
       log.trace("splitting InnerNode {}", this);
-      Pair<InnerNode<T>> pair = splitterContext.splitter.split(children, node);
+      Pair<InnerNode<T>> pair =
+          splitterContext.splitter.split(splitterContext.config, children, node);
 
       if (parent.isPresent()) {
         InnerNode<T> innerNodeParent = (InnerNode<T>) parent.get();
@@ -421,13 +565,12 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
 
       } else {
         // create a new parent
-        InnerNode<T> innerNodeParent = InnerNode.create(pair.left);
-        return innerNodeParent.add(splitterContext, pair.right);
+        return InnerNode.create(List.<Node<T>>of(pair.left, pair.right));
       }
 
     } else {
       // no split required
-      addNode(node);
+      attach(node);
       return (InnerNode<T>) parent.orElse(this);
     }
   }
@@ -448,18 +591,61 @@ public class InnerNode<T> extends RTreeNode<T> implements Node<T> {
     return visibleElements;
   }
 
+  @Override
+  public boolean visitVisibleElements(Rectangle shape, ElementVisitor<T> visitor) {
+    if (shape.intersects(getBounds())) {
+      int size = children.size();
+      for (int i = 0; i < size; i++) {
+        if (!children.get(i).visitVisibleElements(shape, visitor)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean visitContainingElements(double x, double y, ElementVisitor<T> visitor) {
+    if (getBounds().contains(x, y)) {
+      int size = children.size();
+      for (int i = 0; i < size; i++) {
+        if (!children.get(i).visitContainingElements(x, y, visitor)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   /**
-   * descend into the tree and count all children
+   * the count is kept up to date as elements are added and removed below this node
    *
-   * @return
+   * @return the number of elements in the LeafNodes below this node
    */
   public int count() {
-    int count = 0;
+    return count;
+  }
+
+  /**
+   * @param shape the shape to count elements in
+   * @return the number of elements that intersect with the passed shape. Children that are entirely
+   *     inside the shape contribute their count without being visited
+   */
+  @Override
+  public int countIn(Rectangle shape) {
+    Rectangle bounds = getBounds();
+    if (!shape.intersects(bounds)) {
+      return 0;
+    }
+    if (shape.contains(bounds)) {
+      return count;
+    }
+    int countIn = 0;
     int size = children.size();
     for (int i = 0; i < size; i++) {
-      count += children.get(i).count();
+      countIn += children.get(i).countIn(shape);
     }
-    return count;
+    return countIn;
   }
   // to string methods:
 
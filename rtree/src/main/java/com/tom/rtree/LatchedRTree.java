@@ -0,0 +1,312 @@
+package com.tom.rtree;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a thread safe RTree where writers latch only the nodes on their own path, so that inserts into
+ * different parts of the tree run at the same time.
+ *
+ * <p>An insert couples latches from the root down. Each InnerNode on the way is enlarged and
+ * counted while it is latched, and once the chosen child has room for one more entry, so that a
+ * split can not reach past it, the latches above the child are let go. A split therefore only
+ * changes nodes that its writer still holds, and a reader, which couples read latches the same way,
+ * never sees a node half way through a split. The root pointer has a latch of its own that a writer
+ * keeps while the root could split.
+ *
+ * <p>Removes are rare in the workloads this is meant for, and a remove can shrink bounds all the
+ * way to the root, so a remove waits for every other operation to finish and runs alone.
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public class LatchedRTree<T> {
+
+  private static final Logger log = LoggerFactory.getLogger(LatchedRTree.class);
+
+  /** shared by adds and queries, exclusive for removes */
+  private final ReentrantReadWriteLock treeLock = new ReentrantReadWriteLock();
+
+  /** guards the root field */
+  private final ReentrantReadWriteLock rootLatch = new ReentrantReadWriteLock();
+
+  private final SplitterContext<T> splitterContext;
+  private Node<T> root;
+
+  /**
+   * @param splitterContext the R*Tree or R-Tree rules for the changes
+   * @return an empty, thread safe R-Tree
+   */
+  public static <T> LatchedRTree<T> create(SplitterContext<T> splitterContext) {
+    return new LatchedRTree<>(null, splitterContext);
+  }
+
+  /**
+   * @param rtree the tree to guard. It must not be indexed or persistent, and must not be used
+   *     except through the LatchedRTree
+   * @param splitterContext the R*Tree or R-Tree rules for the changes
+   * @return a thread safe R-Tree
+   */
+  public static <T> LatchedRTree<T> of(RTree<T> rtree, SplitterContext<T> splitterContext) {
+    if (rtree.isIndexed() || rtree.isPersistent()) {
+      throw new IllegalArgumentException("only a plain RTree can be latched");
+    }
+    return new LatchedRTree<>(rtree.getRoot().orElse(null), splitterContext);
+  }
+
+  private LatchedRTree(Node<T> root, SplitterContext<T> splitterContext) {
+    this.root = root;
+    this.splitterContext = splitterContext;
+  }
+
+  /**
+   * add an element. Adds from many threads run at the same time unless they need the same nodes
+   *
+   * @param element the element to add
+   * @param bounds the bounds of the element
+   */
+  public void add(T element, Rectangle bounds) {
+    RTreeConfig config = splitterContext.config;
+    Lock shared = treeLock.readLock();
+    shared.lock();
+    // every latch this writer holds, from the top down
+    Deque<Lock> held = new ArrayDeque<>();
+    try {
+      Lock rootWrite = rootLatch.writeLock();
+      rootWrite.lock();
+      held.add(rootWrite);
+      if (root == null) {
+        root = LeafNode.create(element, bounds);
+        return;
+      }
+      Node<T> node = root;
+      held.add(writeLatch(node));
+      while (node instanceof InnerNode) {
+        InnerNode<T> innerNode = (InnerNode<T>) node;
+        innerNode.enlarge(bounds);
+        if (innerNode.size() < config.innerMaxEntries) {
+          // a split below can not go past this node
+          releaseAbove(held);
+        }
+        node = splitterContext.splitter.chooseSubtree(innerNode, element, bounds);
+        held.add(writeLatch(node));
+      }
+      Node<T> got = ((LeafNode<T>) node).add(splitterContext, element, bounds);
+      if (held.getFirst() == rootWrite) {
+        // the root may have split. Every node up to it is still latched
+        while (got.getParent().isPresent()) {
+          got = got.getParent().get();
+        }
+        if (got != root) {
+          log.trace("root was split");
+          root = got;
+        }
+      }
+    } finally {
+      while (!held.isEmpty()) {
+        held.removeFirst().unlock();
+      }
+      shared.unlock();
+    }
+  }
+
+  /** let go of every latch but the last one taken */
+  private static void releaseAbove(Deque<Lock> held) {
+    while (held.size() > 1) {
+      held.removeFirst().unlock();
+    }
+  }
+
+  /**
+   * remove an element. Waits for every other operation to finish
+   *
+   * @param element the element to remove
+   */
+  public void remove(T element) {
+    Lock exclusive = treeLock.writeLock();
+    exclusive.lock();
+    try {
+      if (root != null) {
+        root = RTree.remove(RTree.create(root), element).getRoot().orElse(null);
+      }
+    } finally {
+      exclusive.unlock();
+    }
+  }
+
+  /**
+   * remove an element, searching only the nodes whose bounds contain the bounds that it was added
+   * with. Waits for every other operation to finish
+   *
+   * @param element the element to remove
+   * @param bounds the bounds the element was added with
+   */
+  public void remove(T element, Rectangle bounds) {
+    Lock exclusive = treeLock.writeLock();
+    exclusive.lock();
+    try {
+      if (root != null) {
+        root = RTree.remove(RTree.create(root), element, bounds).getRoot().orElse(null);
+      }
+    } finally {
+      exclusive.unlock();
+    }
+  }
+
+  /**
+   * @param shape a shape to filter the elements
+   * @return the elements whose bounds intersect with the passed shape
+   */
+  public Set<T> getVisibleElements(Rectangle shape) {
+    Set<T> visibleElements = new HashSet<>();
+    Lock shared = treeLock.readLock();
+    shared.lock();
+    try {
+      Node<T> node = readRoot();
+      if (node != null) {
+        try {
+          collect(node, shape, visibleElements);
+        } finally {
+          unlockRead(node);
+        }
+      }
+    } finally {
+      shared.unlock();
+    }
+    return visibleElements;
+  }
+
+  /** node is read latched by the caller */
+  private void collect(Node<T> node, Rectangle shape, Set<T> visibleElements) {
+    if (node instanceof LeafNode) {
+      node.getVisibleElements(visibleElements, shape);
+      return;
+    }
+    if (!shape.intersects(node.getBounds())) {
+      return;
+    }
+    for (Node<T> child : ((InnerNode<T>) node).getChildren()) {
+      readLatch(child);
+      try {
+        collect(child, shape, visibleElements);
+      } finally {
+        unlockRead(child);
+      }
+    }
+  }
+
+  /**
+   * @param p point to search
+   * @return an element that contains p or null
+   */
+  public T getPickedObject(Point p) {
+    Lock shared = treeLock.readLock();
+    shared.lock();
+    try {
+      Node<T> node = readRoot();
+      if (node == null) {
+        return null;
+      }
+      try {
+        return pick(node, p);
+      } finally {
+        unlockRead(node);
+      }
+    } finally {
+      shared.unlock();
+    }
+  }
+
+  /** node is read latched by the caller */
+  private T pick(Node<T> node, Point p) {
+    if (node instanceof LeafNode) {
+      return node.getPickedObject(p);
+    }
+    if (!node.getBounds().contains(p)) {
+      return null;
+    }
+    for (Node<T> child : ((InnerNode<T>) node).getChildren()) {
+      readLatch(child);
+      try {
+        T picked = pick(child, p);
+        if (picked != null) {
+          return picked;
+        }
+      } finally {
+        unlockRead(child);
+      }
+    }
+    return null;
+  }
+
+  /** @return the number of elements in the tree */
+  public int count() {
+    Lock shared = treeLock.readLock();
+    shared.lock();
+    try {
+      Node<T> node = readRoot();
+      if (node == null) {
+        return 0;
+      }
+      try {
+        return node.count();
+      } finally {
+        unlockRead(node);
+      }
+    } finally {
+      shared.unlock();
+    }
+  }
+
+  /**
+   * @return an RTree around the current root. It is only safe to use once no other thread is
+   *     changing this tree
+   */
+  public RTree<T> toRTree() {
+    Lock exclusive = treeLock.writeLock();
+    exclusive.lock();
+    try {
+      return root == null ? RTree.create() : RTree.create(root);
+    } finally {
+      exclusive.unlock();
+    }
+  }
+
+  /**
+   * read latch the root node, coupled with the latch on the root field
+   *
+   * @return the read latched root node, or null if the tree is empty
+   */
+  private Node<T> readRoot() {
+    Lock rootRead = rootLatch.readLock();
+    rootRead.lock();
+    try {
+      if (root != null) {
+        readLatch(root);
+      }
+      return root;
+    } finally {
+      rootRead.unlock();
+    }
+  }
+
+  private static void readLatch(Node<?> node) {
+    ((RTreeNode<?>) node).latch().readLock().lock();
+  }
+
+  private static void unlockRead(Node<?> node) {
+    ((RTreeNode<?>) node).latch().readLock().unlock();
+  }
+
+  private static Lock writeLatch(Node<?> node) {
+    Lock latch = ((RTreeNode<?>) node).latch().writeLock();
+    latch.lock();
+    return latch;
+  }
+}
@@ -0,0 +1,80 @@
+package com.tom.rtree;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * a map of each element in an R-Tree to the LeafNode that holds it. The LeafNodes keep the index up
+ * to date as elements are added and leaves are split, so that an element can be found without
+ * searching the tree
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element in the RTree
+ */
+class LeafIndex<T> {
+
+  private final Map<T, LeafNode<T>> leafs = new HashMap<>();
+
+  /** the last SplitterContext that was passed to contextFor, and the context made from it */
+  private SplitterContext<T> lastSplitterContext;
+
+  private SplitterContext<T> lastIndexedContext;
+
+  /**
+   * @param splitterContext the rules passed in by the caller
+   * @return a SplitterContext with the same rules that will keep this index up to date
+   */
+  SplitterContext<T> contextFor(SplitterContext<T> splitterContext) {
+    if (splitterContext.leafIndex.orElse(null) == this) {
+      return splitterContext;
+    }
+    if (splitterContext != lastSplitterContext) {
+      lastSplitterContext = splitterContext;
+      lastIndexedContext = splitterContext.withLeafIndex(Optional.of(this));
+    }
+    return lastIndexedContext;
+  }
+
+  /**
+   * @param element an element in the tree
+   * @return the LeafNode that holds the element, or null if the element is not in the tree
+   */
+  LeafNode<T> get(T element) {
+    return leafs.get(element);
+  }
+
+  void put(T element, LeafNode<T> leafNode) {
+    leafs.put(element, leafNode);
+  }
+
+  /** @param leafNode a LeafNode whose elements are all moved to it */
+  void putAll(LeafNode<T> leafNode) {
+    for (T element : leafNode.getKeys()) {
+      leafs.put(element, leafNode);
+    }
+  }
+
+  /** @param node the root of a subtree whose elements are all indexed */
+  void putAll(Node<T> node) {
+    if (node instanceof LeafNode) {
+      putAll((LeafNode<T>) node);
+    } else {
+      for (Node<T> kid : ((InnerNode<T>) node).getChildren()) {
+        putAll(kid);
+      }
+    }
+  }
+
+  void remove(T element) {
+    leafs.remove(element);
+  }
+
+  void clear() {
+    leafs.clear();
+  }
+
+  int size() {
+    return leafs.size();
+  }
+}
@@ -3,6 +3,7 @@ package com.tom.rtree;
 import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
@@ -106,11 +107,18 @@ public class LeafNode<T> extends RTreeNode<T> implements Node<T> {
    */
   public Node<T> add(SplitterContext<T> splitterContext, T element, Rectangle bounds) {
 
-    if (size() > M) {
+    if (size() >= splitterContext.config.leafMaxEntries) {
       // overflow. Split this node into 2
       Pair<LeafNode<T>> pair =
           splitterContext.leafSplitter.split(
-              map.entrySet(), new AbstractMap.SimpleEntry<>(element, bounds));
+              splitterContext.config,
+              map.entrySet(),
+              new AbstractMap.SimpleEntry<>(element, bounds));
+      if (splitterContext.leafIndex.isPresent()) {
+        // every element of this node has moved to one of the pair
+        splitterContext.leafIndex.get().putAll(pair.left);
+        splitterContext.leafIndex.get().putAll(pair.right);
+      }
 
       if (parent.isPresent()) {
         // if there is a parent node, remove this node from it
@@ -121,14 +129,16 @@ public class LeafNode<T> extends RTreeNode<T> implements Node<T> {
 
       } else {
         // if there is no parent, create one then add the pair from the split
-        InnerNode<T> newParent = InnerNode.create(pair.left);
-        return newParent.add(splitterContext, pair.right);
+        return InnerNode.create(List.<Node<T>>of(pair.left, pair.right));
       }
 
     } else {
       // no split required
       // just add this element to the map
       map.put(element, bounds);
+      if (splitterContext.leafIndex.isPresent()) {
+        splitterContext.leafIndex.get().put(element, this);
+      }
       return parent.orElse(this);
     }
   }
@@ -157,6 +167,7 @@ public class LeafNode<T> extends RTreeNode<T> implements Node<T> {
       map.remove(element);
       if (parent.isPresent()) {
         InnerNode<T> parentNode = (InnerNode<T>) parent.get();
+        parentNode.countChanged(-1);
         if (map.size() == 0) {
           parentNode.removeNode(this);
         }
@@ -235,6 +246,16 @@ public class LeafNode<T> extends RTreeNode<T> implements Node<T> {
     return null;
   }
 
+  /**
+   * @param element the element to find
+   * @param bounds the bounds the element was added with
+   * @return this LeafNode if it contains the passed element
+   */
+  @Override
+  public LeafNode<T> getContainingLeaf(T element, Rectangle bounds) {
+    return getContainingLeaf(element);
+  }
+
   /**
    * @param p the point to search for
    * @return a Collection of LeafNodes that would contain the point
@@ -283,6 +304,26 @@ public class LeafNode<T> extends RTreeNode<T> implements Node<T> {
     return map.getBounds();
   }
 
+  @Override
+  double minX() {
+    return map.minX();
+  }
+
+  @Override
+  double minY() {
+    return map.minY();
+  }
+
+  @Override
+  double maxX() {
+    return map.maxX();
+  }
+
+  @Override
+  double maxY() {
+    return map.maxY();
+  }
+
   /**
    * @param p a point to search for
    * @return the map entry key whose bounds value contains the passed point
@@ -317,11 +358,58 @@ public class LeafNode<T> extends RTreeNode<T> implements Node<T> {
     return visibleElements;
   }
 
+  @Override
+  public boolean visitVisibleElements(Rectangle shape, ElementVisitor<T> visitor) {
+    if (shape.intersects(getBounds())) {
+      for (Map.Entry<T, Rectangle> entry : map.entrySet()) {
+        if (shape.intersects(entry.getValue())
+            && !visitor.visit(entry.getKey(), entry.getValue())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean visitContainingElements(double x, double y, ElementVisitor<T> visitor) {
+    if (getBounds().contains(x, y)) {
+      for (Map.Entry<T, Rectangle> entry : map.entrySet()) {
+        if (entry.getValue().contains(x, y) && !visitor.visit(entry.getKey(), entry.getValue())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   /** @return the number of children in this node */
   public int count() {
     return size();
   }
 
+  /**
+   * @param shape the shape to count elements in
+   * @return the number of elements whose bounds intersect with the passed shape
+   */
+  @Override
+  public int countIn(Rectangle shape) {
+    Rectangle bounds = getBounds();
+    if (!shape.intersects(bounds)) {
+      return 0;
+    }
+    if (shape.contains(bounds)) {
+      return map.size();
+    }
+    int countIn = 0;
+    for (Rectangle r : map.values()) {
+      if (shape.intersects(r)) {
+        countIn++;
+      }
+    }
+    return countIn;
+  }
+
   // to string methods
 
   public String asString(String margin) {
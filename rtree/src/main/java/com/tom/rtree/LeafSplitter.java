@@ -11,6 +11,14 @@ import java.util.Map;
  */
 public interface LeafSplitter<T> {
 
+  /**
+   * @param config the fan-out of the tree. The split leaves hold at least config.leafMinEntries
+   * @param entries the entries of the full LeafNode
+   * @param newEntry the entry that did not fit
+   * @return two new LeafNodes that share the entries and the new entry
+   */
   Pair<LeafNode<T>> split(
-      Collection<Map.Entry<T, Rectangle>> entries, Map.Entry<T, Rectangle> newEntry);
+      RTreeConfig config,
+      Collection<Map.Entry<T, Rectangle>> entries,
+      Map.Entry<T, Rectangle> newEntry);
 }
@@ -0,0 +1,97 @@
+package com.tom.rtree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * a read-only file mapped into memory as little-endian chunks of CHUNK_SIZE bytes, so that files
+ * bigger than the 2GB limit of one MappedByteBuffer can be read by a long position. A double, int
+ * or long at a position that is a multiple of its size never crosses from one chunk into the next.
+ *
+ * <p>Java has no supported way to unmap a buffer, and unmapping one that another thread still reads
+ * would crash the JVM. So close only lets go of the chunks, and the mapping is released when they
+ * are collected
+ *
+ * @author Tom Nelson
+ */
+class MappedFile implements Closeable {
+
+  static final int CHUNK_SHIFT = 30;
+  static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+  private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final ByteBuffer[] chunks;
+  private final long size;
+  private volatile boolean closed;
+
+  /**
+   * @param path the file to map
+   * @throws IOException if the file can not be mapped
+   */
+  MappedFile(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      size = channel.size();
+      chunks = new ByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT)];
+      for (int i = 0; i < chunks.length; i++) {
+        long position = (long) i << CHUNK_SHIFT;
+        MappedByteBuffer chunk =
+            channel.map(
+                FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+        chunks[i] = chunk.order(ByteOrder.LITTLE_ENDIAN);
+      }
+    }
+  }
+
+  /** let go of the mapped chunks. Callers check isClosed before reading */
+  @Override
+  public void close() {
+    closed = true;
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = null;
+    }
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  long size() {
+    return size;
+  }
+
+  double getDouble(long position) {
+    return chunks[(int) (position >>> CHUNK_SHIFT)].getDouble((int) (position & CHUNK_MASK));
+  }
+
+  int getInt(long position) {
+    return chunks[(int) (position >>> CHUNK_SHIFT)].getInt((int) (position & CHUNK_MASK));
+  }
+
+  long getLong(long position) {
+    return chunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & CHUNK_MASK));
+  }
+
+  /**
+   * copy bytes that may cross from one chunk into the next
+   *
+   * @param position where to start copying
+   * @param bytes filled from the file
+   */
+  void get(long position, byte[] bytes) {
+    int copied = 0;
+    while (copied < bytes.length) {
+      long at = position + copied;
+      ByteBuffer chunk = chunks[(int) (at >>> CHUNK_SHIFT)].duplicate();
+      chunk.position((int) (at & CHUNK_MASK));
+      int length = Math.min(bytes.length - copied, chunk.remaining());
+      chunk.get(bytes, copied, length);
+      copied += length;
+    }
+  }
+}
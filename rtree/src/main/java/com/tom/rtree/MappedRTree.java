@@ -0,0 +1,477 @@
+package com.tom.rtree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a read-only R-Tree that is queried straight from a memory mapped file. Nothing but the elements
+ * of the results is read onto the heap, and processes that map the same file share one copy of it
+ * in the page cache.
+ *
+ * <p>The file holds the arrays of a FrozenRTree, little-endian, each starting on a page boundary:
+ *
+ * <ul>
+ *   <li>the header page: MAGIC, VERSION, the node count and the entry count as ints, then the
+ *       position of each of the following sections as longs
+ *   <li>node bounds: minX, minY, maxX, maxY doubles for each node, numbered breadth first
+ *   <li>node ranges: a start and end int for each node. The children of an InnerNode are the nodes
+ *       from start up to end. A LeafNode's entries are from -1 - start up to end, so the sign of
+ *       start tells leaves from inner nodes
+ *   <li>entry bounds: minX, minY, maxX, maxY doubles for each entry
+ *   <li>element offsets: a long for each entry and one more, where the ElementCodec bytes of entry
+ *       j are from offset j up to offset j + 1 in the element data
+ *   <li>element data
+ * </ul>
+ *
+ * <p>Close the tree when it is no longer needed, to let go of the mapped file.
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public class MappedRTree<T> implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(MappedRTree.class);
+
+  static final int MAGIC = 0x524d4150; // "RMAP"
+  static final int VERSION = 1;
+  static final int PAGE_SIZE = 4096;
+
+  private final MappedFile file;
+  private final ElementCodec<T> codec;
+  private final int nodeCount;
+  private final int entryCount;
+  private final long nodeBounds;
+  private final long nodeRanges;
+  private final long entryBounds;
+  private final long elementOffsets;
+  private final long elementData;
+
+  /**
+   * @param rtree the tree to write
+   * @param codec writes each element
+   * @param path the file to write
+   * @param <T> the type of element stored in the RTree
+   * @throws IOException if the file can not be written
+   */
+  public static <T> void write(RTree<T> rtree, ElementCodec<T> codec, Path path)
+      throws IOException {
+    write(rtree.freeze(), codec, path);
+  }
+
+  /**
+   * @param frozen the snapshot to write
+   * @param codec writes each element
+   * @param path the file to write
+   * @param <T> the type of element stored in the RTree
+   * @throws IOException if the file can not be written
+   */
+  public static <T> void write(FrozenRTree<T> frozen, ElementCodec<T> codec, Path path)
+      throws IOException {
+    int nodeCount = frozen.leafNodes.length;
+    int entryCount = frozen.elements.length;
+    long nodeBounds = PAGE_SIZE;
+    long nodeRanges = align(nodeBounds + 32L * nodeCount);
+    long entryBounds = align(nodeRanges + 8L * nodeCount);
+    long elementOffsets = align(entryBounds + 32L * entryCount);
+    long elementData = align(elementOffsets + 8L * (entryCount + 1));
+
+    try (Output out = new Output(path)) {
+      out.putInt(MAGIC);
+      out.putInt(VERSION);
+      out.putInt(nodeCount);
+      out.putInt(entryCount);
+      out.putLong(nodeBounds);
+      out.putLong(nodeRanges);
+      out.putLong(entryBounds);
+      out.putLong(elementOffsets);
+      out.putLong(elementData);
+      out.align();
+      for (int k = 0; k < 4 * frozen.nodeBounds.size(); k++) {
+        out.putDouble(frozen.nodeBounds.get(k));
+      }
+      out.align();
+      for (int i = 0; i < nodeCount; i++) {
+        int start = frozen.childRanges[2 * i];
+        out.putInt(frozen.leafNodes[i] ? -1 - start : start);
+        out.putInt(frozen.childRanges[2 * i + 1]);
+      }
+      out.align();
+      for (int k = 0; k < 4 * frozen.entryBounds.size(); k++) {
+        out.putDouble(frozen.entryBounds.get(k));
+      }
+      out.align();
+      // the elements are encoded twice, once to find their offsets and once to write them, so
+      // that they never all have to be held in memory at once
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(bytes);
+      long offset = 0;
+      out.putLong(offset);
+      for (Object element : frozen.elements) {
+        encode(codec, element, bytes, data);
+        offset += bytes.size();
+        out.putLong(offset);
+      }
+      out.align();
+      for (Object element : frozen.elements) {
+        encode(codec, element, bytes, data);
+        out.put(bytes.toByteArray());
+      }
+    }
+    log.trace("wrote {} nodes and {} entries to {}", nodeCount, entryCount, path);
+  }
+
+  /** replace the contents of bytes with the encoded element */
+  @SuppressWarnings("unchecked")
+  private static <T> void encode(
+      ElementCodec<T> codec, Object element, ByteArrayOutputStream bytes, DataOutputStream data)
+      throws IOException {
+    bytes.reset();
+    codec.write((T) element, data);
+    data.flush();
+  }
+
+  private static long align(long position) {
+    return (position + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+  }
+
+  /** writes little-endian values to a file through one buffer */
+  private static class Output implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+
+    Output(Path path) throws IOException {
+      channel =
+          FileChannel.open(
+              path,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private void ensure(int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        flush();
+      }
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    void putInt(int i) throws IOException {
+      ensure(4);
+      buffer.putInt(i);
+      position += 4;
+    }
+
+    void putLong(long l) throws IOException {
+      ensure(8);
+      buffer.putLong(l);
+      position += 8;
+    }
+
+    void putDouble(double d) throws IOException {
+      ensure(8);
+      buffer.putDouble(d);
+      position += 8;
+    }
+
+    void put(byte[] bytes) throws IOException {
+      int written = 0;
+      while (written < bytes.length) {
+        ensure(1);
+        int length = Math.min(bytes.length - written, buffer.remaining());
+        buffer.put(bytes, written, length);
+        written += length;
+      }
+      position += bytes.length;
+    }
+
+    /** pad with zeros to the next page boundary */
+    void align() throws IOException {
+      while (position % PAGE_SIZE != 0) {
+        ensure(1);
+        buffer.put((byte) 0);
+        position++;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * @param path a file written by MappedRTree.write
+   * @param codec reads each element
+   * @param <T> the type of element stored in the RTree
+   * @return a tree that reads the mapped file for each query
+   * @throws IOException if the file can not be mapped or was not written by MappedRTree.write
+   */
+  public static <T> MappedRTree<T> open(Path path, ElementCodec<T> codec) throws IOException {
+    return new MappedRTree<>(new MappedFile(path), codec);
+  }
+
+  private MappedRTree(MappedFile file, ElementCodec<T> codec) throws IOException {
+    if (file.size() < PAGE_SIZE || file.getInt(0) != MAGIC) {
+      throw new IOException("not a mapped RTree file");
+    }
+    int version = file.getInt(4);
+    if (version != VERSION) {
+      throw new IOException("unsupported mapped RTree version " + version);
+    }
+    this.file = file;
+    this.codec = codec;
+    nodeCount = file.getInt(8);
+    entryCount = file.getInt(12);
+    nodeBounds = file.getLong(16);
+    nodeRanges = file.getLong(24);
+    entryBounds = file.getLong(32);
+    elementOffsets = file.getLong(40);
+    elementData = file.getLong(48);
+  }
+
+  /** @return the number of elements in the file */
+  public int count() {
+    return entryCount;
+  }
+
+  /** @return the bounds of all the elements, or Rectangle.IDENTITY if there are none */
+  public Rectangle getBounds() {
+    checkOpen();
+    if (entryCount == 0) {
+      return Rectangle.IDENTITY;
+    }
+    return Rectangle.fromCorners(
+        file.getDouble(nodeBounds),
+        file.getDouble(nodeBounds + 8),
+        file.getDouble(nodeBounds + 16),
+        file.getDouble(nodeBounds + 24));
+  }
+
+  /**
+   * @param p point to search
+   * @return an element whose bounds contain p, or null
+   */
+  public T getPickedObject(Point p) {
+    checkOpen();
+    if (entryCount == 0) {
+      return null;
+    }
+    int entry = pick(0, p.x, p.y);
+    return entry < 0 ? null : element(entry);
+  }
+
+  /** @return the number of an entry below node i that contains x, y or -1 */
+  private int pick(int i, double x, double y) {
+    if (!contains(nodeBounds, i, x, y)) {
+      return -1;
+    }
+    int start = file.getInt(nodeRanges + 8L * i);
+    int end = file.getInt(nodeRanges + 8L * i + 4);
+    if (start < 0) {
+      for (int j = -1 - start; j < end; j++) {
+        if (contains(entryBounds, j, x, y)) {
+          return j;
+        }
+      }
+    } else {
+      for (int j = start; j < end; j++) {
+        int picked = pick(j, x, y);
+        if (picked >= 0) {
+          return picked;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param shape a shape to filter the elements
+   * @return the elements whose bounds intersect with the passed shape
+   */
+  public List<T> getVisibleElements(Rectangle shape) {
+    List<T> visibleElements = new ArrayList<>();
+    visitVisibleElements(shape, (element, bounds) -> visibleElements.add(element));
+    return visibleElements;
+  }
+
+  /**
+   * @param shape the shape to search
+   * @param visitor called with each element whose bounds intersect with the shape
+   * @return false if the visitor stopped the search, true otherwise
+   */
+  public boolean visitVisibleElements(Rectangle shape, ElementVisitor<T> visitor) {
+    checkOpen();
+    return entryCount == 0 || visit(0, shape.x, shape.y, shape.maxX, shape.maxY, visitor);
+  }
+
+  private boolean visit(
+      int i, double minX, double minY, double maxX, double maxY, ElementVisitor<T> visitor) {
+    if (!intersects(nodeBounds, i, minX, minY, maxX, maxY)) {
+      return true;
+    }
+    int start = file.getInt(nodeRanges + 8L * i);
+    int end = file.getInt(nodeRanges + 8L * i + 4);
+    if (start < 0) {
+      for (int j = -1 - start; j < end; j++) {
+        if (intersects(entryBounds, j, minX, minY, maxX, maxY)
+            && !visitor.visit(element(j), entryRectangle(j))) {
+          return false;
+        }
+      }
+    } else {
+      for (int j = start; j < end; j++) {
+        if (!visit(j, minX, minY, maxX, maxY, visitor)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param p the Point to measure from
+   * @param k the most elements to return
+   * @return up to k elements in ascending order of the distance from p to their bounds
+   */
+  public List<T> nearest(Point p, int k) {
+    return nearest(p, k, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * best-first search, as in FrozenRTree.nearest
+   *
+   * @param p the Point to measure from
+   * @param k the most elements to return
+   * @param maxDistance the farthest an element's bounds may be from p
+   * @return up to k elements in ascending order of the distance from p to their bounds
+   */
+  public List<T> nearest(Point p, int k, double maxDistance) {
+    if (k < 0) {
+      throw new IllegalArgumentException("k must not be negative but was " + k);
+    }
+    checkOpen();
+    List<T> nearest = new ArrayList<>(Math.min(k, entryCount));
+    if (k == 0 || entryCount == 0) {
+      return nearest;
+    }
+    double maxDistanceSquared = maxDistance * maxDistance;
+    DistanceQueue queue = new DistanceQueue();
+    queue.offer(squaredDistance(nodeBounds, 0, p), 0, maxDistanceSquared);
+    while (!queue.isEmpty()) {
+      int id = queue.poll();
+      if (id < 0) {
+        nearest.add(element(-1 - id));
+        if (nearest.size() == k) {
+          break;
+        }
+        continue;
+      }
+      int start = file.getInt(nodeRanges + 8L * id);
+      int end = file.getInt(nodeRanges + 8L * id + 4);
+      if (start < 0) {
+        for (int j = -1 - start; j < end; j++) {
+          queue.offer(squaredDistance(entryBounds, j, p), -1 - j, maxDistanceSquared);
+        }
+      } else {
+        for (int j = start; j < end; j++) {
+          queue.offer(squaredDistance(nodeBounds, j, p), j, maxDistanceSquared);
+        }
+      }
+    }
+    return nearest;
+  }
+
+  /** decode the element of entry j */
+  private T element(int j) {
+    long from = file.getLong(elementOffsets + 8L * j);
+    long to = file.getLong(elementOffsets + 8L * j + 8);
+    byte[] bytes = new byte[(int) (to - from)];
+    file.get(elementData + from, bytes);
+    try {
+      return codec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private Rectangle entryRectangle(int j) {
+    long at = entryBounds + 32L * j;
+    return Rectangle.fromCorners(
+        file.getDouble(at),
+        file.getDouble(at + 8),
+        file.getDouble(at + 16),
+        file.getDouble(at + 24));
+  }
+
+  private boolean contains(long section, int i, double x, double y) {
+    long at = section + 32L * i;
+    return x >= file.getDouble(at)
+        && x <= file.getDouble(at + 16)
+        && y >= file.getDouble(at + 8)
+        && y <= file.getDouble(at + 24);
+  }
+
+  private boolean intersects(
+      long section, int i, double minX, double minY, double maxX, double maxY) {
+    long at = section + 32L * i;
+    return file.getDouble(at + 16) >= minX
+        && maxX >= file.getDouble(at)
+        && file.getDouble(at + 24) >= minY
+        && maxY >= file.getDouble(at + 8);
+  }
+
+  private double squaredDistance(long section, int i, Point p) {
+    long at = section + 32L * i;
+    return Circle.squaredDistance(
+        p.x,
+        p.y,
+        file.getDouble(at),
+        file.getDouble(at + 8),
+        file.getDouble(at + 16),
+        file.getDouble(at + 24));
+  }
+
+  /** let go of the mapped file. Queries after close throw an IllegalStateException */
+  @Override
+  public void close() {
+    file.close();
+  }
+
+  private void checkOpen() {
+    if (file.isClosed()) {
+      throw new IllegalStateException("this MappedRTree is closed");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MappedRTree{" + "nodes=" + nodeCount + ", elements=" + entryCount + '}';
+  }
+}
@@ -0,0 +1,111 @@
+package com.tom.rtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * best-first search for the elements nearest to a Point.
+ *
+ * <p>Nodes and elements share one priority queue, ordered by the smallest possible distance from
+ * the Point to their bounds (MINDIST). No element below a node can be closer than the node's
+ * MINDIST, so when an element reaches the head of the queue nothing left in the queue can beat it
+ * and it is the next result. Only the nodes whose bounds are closer than the k-th result are ever
+ * opened.
+ *
+ * <p>Based on Distance Browsing in Spatial Databases, Gisli R. Hjaltason, Hanan Samet
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+class NearestNeighbors<T> {
+
+  private static final Logger log = LoggerFactory.getLogger(NearestNeighbors.class);
+
+  /** a node or an element in the queue, with its squared distance from the Point */
+  private static class Candidate<T> implements Comparable<Candidate<T>> {
+    final double distanceSquared;
+    final Node<T> node;
+    final T element;
+
+    Candidate(double distanceSquared, Node<T> node, T element) {
+      this.distanceSquared = distanceSquared;
+      this.node = node;
+      this.element = element;
+    }
+
+    @Override
+    public int compareTo(Candidate<T> other) {
+      return Double.compare(distanceSquared, other.distanceSquared);
+    }
+  }
+
+  private final Point p;
+  private final double maxDistanceSquared;
+  private final PriorityQueue<Candidate<T>> queue = new PriorityQueue<>();
+
+  private NearestNeighbors(Point p, double maxDistance) {
+    this.p = p;
+    this.maxDistanceSquared = maxDistance * maxDistance;
+  }
+
+  /**
+   * @param root the root of the tree to search
+   * @param p the Point to measure from
+   * @param k the most elements to return
+   * @param maxDistance elements farther than this from p are not returned
+   * @return up to k elements, nearest first. The distance to an element is the distance from p to
+   *     the nearest edge of its bounds, or zero when p is inside them
+   */
+  static <T> List<T> search(Node<T> root, Point p, int k, double maxDistance) {
+    if (k < 0) {
+      throw new IllegalArgumentException("k must not be negative but was " + k);
+    }
+    return new NearestNeighbors<T>(p, maxDistance).search(root, k);
+  }
+
+  private List<T> search(Node<T> root, int k) {
+    List<T> nearest = new ArrayList<>(Math.min(k, root.count()));
+    if (k == 0) {
+      return nearest;
+    }
+    offer(root);
+    int opened = 0;
+    while (!queue.isEmpty()) {
+      Candidate<T> candidate = queue.poll();
+      if (candidate.node == null) {
+        nearest.add(candidate.element);
+        if (nearest.size() == k) {
+          break;
+        }
+      } else if (candidate.node instanceof LeafNode) {
+        opened++;
+        for (Map.Entry<T, Rectangle> entry : ((LeafNode<T>) candidate.node).map.entrySet()) {
+          double distanceSquared = Circle.squaredDistance(p, entry.getValue());
+          if (distanceSquared <= maxDistanceSquared) {
+            queue.add(new Candidate<>(distanceSquared, null, entry.getKey()));
+          }
+        }
+      } else {
+        opened++;
+        List<Node<T>> children = ((InnerNode<T>) candidate.node).getChildren();
+        int size = children.size();
+        for (int i = 0; i < size; i++) {
+          offer(children.get(i));
+        }
+      }
+    }
+    log.trace("found {} nearest to {} after opening {} nodes", nearest.size(), p, opened);
+    return nearest;
+  }
+
+  private void offer(Node<T> node) {
+    double distanceSquared = Circle.squaredDistance(p, node.getBounds());
+    if (distanceSquared <= maxDistanceSquared) {
+      queue.add(new Candidate<>(distanceSquared, node, null));
+    }
+  }
+}
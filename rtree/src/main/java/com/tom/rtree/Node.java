@@ -13,7 +13,9 @@ public interface Node<T> extends TreeNode, Bounded {
 
   Logger log = LoggerFactory.getLogger(Node.class);
 
+  /** the default most entries in a node. See RTreeConfig to configure a tree */
   int M = 10;
+  /** the default fewest entries in a node after a split */
   int m = (int) (M * .4); // m is 40% of M
 
   String asString(String margin);
@@ -32,6 +34,8 @@ public interface Node<T> extends TreeNode, Bounded {
 
   int count();
 
+  int countIn(Rectangle shape);
+
   Point centerOfGravity();
 
   Set<LeafNode<T>> getContainingLeafs(Set<LeafNode<T>> containingLeafs, double x, double y);
@@ -40,6 +44,8 @@ public interface Node<T> extends TreeNode, Bounded {
 
   LeafNode<T> getContainingLeaf(T element);
 
+  LeafNode<T> getContainingLeaf(T element, Rectangle bounds);
+
   Node<T> remove(T element);
 
   Node<T> recalculateBounds();
@@ -48,6 +54,21 @@ public interface Node<T> extends TreeNode, Bounded {
 
   Set<T> getVisibleElements(Set<T> visibleElements, Rectangle shape);
 
+  /**
+   * @param shape the shape to search
+   * @param visitor called with each element whose bounds intersect with the shape
+   * @return false if the visitor stopped the search, true otherwise
+   */
+  boolean visitVisibleElements(Rectangle shape, ElementVisitor<T> visitor);
+
+  /**
+   * @param x coordinate of the point to search for
+   * @param y coordinate of the point to search for
+   * @param visitor called with each element whose bounds contain the point
+   * @return false if the visitor stopped the search, true otherwise
+   */
+  boolean visitContainingElements(double x, double y, ElementVisitor<T> visitor);
+
   static String asString(List<Rectangle> rectangles) {
     StringBuilder sb = new StringBuilder();
     for (Rectangle r : rectangles) {
@@ -1,5 +1,6 @@
 package com.tom.rtree;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import org.slf4j.Logger;
@@ -14,6 +15,21 @@ import org.slf4j.LoggerFactory;
 public class NodeMap<N> extends HashMap<N, Rectangle> implements BoundedMap<N>, Bounded {
 
   private static final Logger log = LoggerFactory.getLogger(NodeMap.class);
+
+  /** the corners of the union of the values. All zero when the map is empty */
+  private double minX;
+
+  private double minY;
+  private double maxX;
+  private double maxY;
+
+  /** false until the first value is added */
+  private boolean bounded;
+
+  /**
+   * the corners as a Rectangle, made when asked for and dropped when the corners change. Checked
+   * against the corners before it is used
+   */
   private Rectangle bounds;
 
   public NodeMap() {}
@@ -44,36 +60,102 @@ public class NodeMap<N> extends HashMap<N, Rectangle> implements BoundedMap<N>,
     return removed;
   }
 
+  /**
+   * remove every passed key, and recalculate the bounds once at the end
+   *
+   * @param keys the keys to remove
+   * @return the number of keys that were in the map
+   */
+  public int removeAll(Collection<?> keys) {
+    int removed = 0;
+    for (Object key : keys) {
+      if (super.remove(key) != null) {
+        removed++;
+      }
+    }
+    if (removed > 0) {
+      recalculateBounds();
+    }
+    return removed;
+  }
+
   @Override
   public void clear() {
     super.clear();
-    bounds = null;
+    clearBounds();
   }
 
   @Override
   public Rectangle getBounds() {
-    if (bounds == null) {
+    if (!bounded) {
       return Rectangle.IDENTITY;
     }
+    double minX = this.minX;
+    double minY = this.minY;
+    double maxX = this.maxX;
+    double maxY = this.maxY;
+    Rectangle bounds = this.bounds;
+    // an optimistic reader in ConcurrentRTree may have cached a Rectangle from corners that a
+    // writer changed since, so the cache is only used while it still matches the corners
+    if (bounds == null
+        || bounds.x != minX
+        || bounds.y != minY
+        || bounds.maxX != maxX
+        || bounds.maxY != maxY) {
+      bounds = Rectangle.fromCorners(minX, minY, maxX, maxY);
+      this.bounds = bounds;
+    }
     return bounds;
   }
 
+  double minX() {
+    return minX;
+  }
+
+  double minY() {
+    return minY;
+  }
+
+  double maxX() {
+    return maxX;
+  }
+
+  double maxY() {
+    return maxY;
+  }
+
+  private void clearBounds() {
+    minX = minY = maxX = maxY = 0;
+    bounded = false;
+    bounds = null;
+  }
+
   private void addBoundsFor(Map<? extends N, Rectangle> kids) {
     for (Entry<? extends N, Rectangle> kid : kids.entrySet()) {
       addBoundsFor(kid.getValue());
     }
   }
 
+  /** grow the corners to include r. Nothing is allocated */
   private void addBoundsFor(Rectangle r) {
-    if (bounds == null) {
+    if (!bounded) {
+      minX = r.x;
+      minY = r.y;
+      maxX = r.maxX;
+      maxY = r.maxY;
+      bounded = true;
       bounds = r;
-    } else {
-      bounds = bounds.union(r);
+    } else if (r.x < minX || r.y < minY || r.maxX > maxX || r.maxY > maxY) {
+      minX = Math.min(minX, r.x);
+      minY = Math.min(minY, r.y);
+      maxX = Math.max(maxX, r.maxX);
+      maxY = Math.max(maxY, r.maxY);
+      bounds = null;
     }
   }
   /** iterate over all children and update the bounds Called after removing from the collection */
   public void recalculateBounds() {
-    bounds = null;
+    clearBounds();
     for (Rectangle r : this.values()) {
       addBoundsFor(r);
     }
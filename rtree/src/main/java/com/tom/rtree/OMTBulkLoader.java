@@ -0,0 +1,95 @@
+package com.tom.rtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Overlap Minimizing Top-down packing of entries into a complete R-Tree.
+ *
+ * <p>The height of the tree is chosen first, from the number of entries and the fan-out of the
+ * nodes. Starting at the root, the entries are divided into as many groups as the subtrees below
+ * the root need to hold them: they are sorted by the x coordinate of their centers and cut into
+ * vertical slices, then each slice is sorted by the y coordinate of the centers and cut into groups
+ * of (nearly) equal size. Each group is packed the same way into a subtree one level shorter, until
+ * the groups are small enough to be LeafNodes. Because the partitions are made from the top, the
+ * upper levels of the tree are evenly shaped and overlap very little.
+ *
+ * <p>Based on OMT: Overlap Minimizing Top-down Bulk Loading Algorithm for R-tree, Taewon Lee, Sukho
+ * Lee
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public class OMTBulkLoader<T> implements BulkLoader<T> {
+
+  private static final Logger log = LoggerFactory.getLogger(OMTBulkLoader.class);
+
+  private final HorizontalCenterNodeComparator<T> horizontalCenterComparator =
+      new HorizontalCenterNodeComparator<>();
+  private final VerticalCenterNodeComparator<T> verticalCenterComparator =
+      new VerticalCenterNodeComparator<>();
+
+  @Override
+  public Node<T> load(SplitterContext<T> splitterContext, List<Map.Entry<T, Rectangle>> entries) {
+    RTreeConfig config = splitterContext.config;
+    int height = 1;
+    for (long capacity = config.leafMaxEntries;
+        capacity < entries.size();
+        capacity *= config.innerMaxEntries) {
+      height++;
+    }
+    log.trace("packing {} entries into a tree of height {}", entries.size(), height);
+    return load(config, entries, height);
+  }
+
+  /**
+   * @param config the fan-out of the nodes
+   * @param entries the entries for the subtree. This list is sorted in place
+   * @param height the height of the subtree, where a LeafNode has height 1
+   * @return the root of the subtree
+   */
+  private Node<T> load(RTreeConfig config, List<Map.Entry<T, Rectangle>> entries, int height) {
+    if (height == 1) {
+      return LeafNode.create(entries);
+    }
+    // the most entries that a subtree one level down can hold
+    long subtreeCapacity = config.leafMaxEntries;
+    for (int i = 2; i < height; i++) {
+      subtreeCapacity *= config.innerMaxEntries;
+    }
+    int size = entries.size();
+    int childCount = (int) ((size + subtreeCapacity - 1) / subtreeCapacity);
+    int sliceCount = (int) Math.ceil(Math.sqrt(childCount));
+
+    List<Node<T>> children = new ArrayList<>(childCount);
+    entries.sort(horizontalCenterComparator);
+    int child = 0;
+    for (int slice = 0; slice < sliceCount; slice++) {
+      // spread the children as evenly as possible over the slices
+      int sliceChildCount = childCount / sliceCount + (slice < childCount % sliceCount ? 1 : 0);
+      int sliceStart = boundary(size, child, childCount);
+      int sliceEnd = boundary(size, child + sliceChildCount, childCount);
+      List<Map.Entry<T, Rectangle>> sliceEntries = entries.subList(sliceStart, sliceEnd);
+      sliceEntries.sort(verticalCenterComparator);
+      for (int i = 0; i < sliceChildCount; i++, child++) {
+        int start = boundary(size, child, childCount) - sliceStart;
+        int end = boundary(size, child + 1, childCount) - sliceStart;
+        children.add(load(config, sliceEntries.subList(start, end), height - 1));
+      }
+    }
+    return InnerNode.create(children);
+  }
+
+  /**
+   * @param size the number of entries to divide
+   * @param group the index of a group
+   * @param groupCount the number of groups
+   * @return the index of the first entry in the group when size entries are divided evenly
+   */
+  private static int boundary(int size, int group, int groupCount) {
+    return (int) ((long) size * group / groupCount);
+  }
+}
@@ -0,0 +1,63 @@
+package com.tom.rtree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * a file of fixed-size pages, numbered from zero
+ *
+ * @author Tom Nelson
+ */
+class PageFile implements Closeable {
+
+  private final FileChannel channel;
+  final int pageSize;
+
+  PageFile(Path path, int pageSize) throws IOException {
+    this.channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.pageSize = pageSize;
+  }
+
+  /** @return the number of pages in the file */
+  int pageCount() throws IOException {
+    return (int) (channel.size() / pageSize);
+  }
+
+  /** fill page from the file. Bytes past the end of the file are zeros */
+  void read(int pageId, byte[] page) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(page);
+    long position = (long) pageId * pageSize;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        while (buffer.hasRemaining()) {
+          buffer.put((byte) 0);
+        }
+      }
+    }
+  }
+
+  void write(int pageId, byte[] page) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(page);
+    long position = (long) pageId * pageSize;
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + buffer.position());
+    }
+  }
+
+  /** force the written pages to the storage device */
+  void sync() throws IOException {
+    channel.force(false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
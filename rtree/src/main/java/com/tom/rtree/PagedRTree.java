@@ -0,0 +1,561 @@
+package com.tom.rtree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * an R-Tree that lives in a file, one fixed-size page per node, with only a BufferPool of pages in
+ * memory. Inserts choose subtrees and split full nodes with the rules of the SplitterContext, as
+ * the in-memory RTree does. Not thread safe.
+ *
+ * <p>Page 0 is the header: MAGIC, VERSION, the page size, the root page, the height of the tree (0
+ * when the root is a leaf), the element count and the page count, all ints. A leaf page holds a
+ * type byte LEAF, an entry count, then the x, y, width and height of each entry followed by the
+ * element, written by the ElementCodec. An inner page holds a type byte INNER, a child count, then
+ * the page number, entry count and minX, minY, maxX, maxY of each child. The entry count lets the
+ * splitters break ties on the fewest children without reading the child pages. The nodes must fit
+ * their pages, so the page size has to allow for the configured maximum entries of the
+ * SplitterContext.
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public class PagedRTree<T> implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(PagedRTree.class);
+
+  static final int MAGIC = 0x52504147; // "RPAG"
+  static final int VERSION = 1;
+  static final byte LEAF = 0;
+  static final byte INNER = 1;
+
+  private final PageFile file;
+  private final BufferPool pool;
+  private final ElementCodec<T> codec;
+  private final SplitterContext<T> splitterContext;
+  private int root;
+  private int height;
+  private int count;
+  private int pageCount;
+
+  /** the children of an inner page */
+  private static class Children {
+    final List<Integer> pages = new ArrayList<>();
+    final List<Integer> sizes = new ArrayList<>();
+    final List<Rectangle> bounds = new ArrayList<>();
+
+    void add(int page, int size, Rectangle bounds) {
+      this.pages.add(page);
+      this.sizes.add(size);
+      this.bounds.add(bounds);
+    }
+  }
+
+  /**
+   * what an insert into a page passes back to the parent: the entry count of the page and, if the
+   * page had to split, the page, entry count and bounds of the right half along with the bounds of
+   * the left half
+   */
+  private static class Inserted {
+    final int size;
+    final Rectangle leftBounds;
+    final int rightPage;
+    final int rightSize;
+    final Rectangle rightBounds;
+
+    Inserted(int size) {
+      this(size, null, -1, 0, null);
+    }
+
+    Inserted(int size, Rectangle leftBounds, int rightPage, int rightSize, Rectangle rightBounds) {
+      this.size = size;
+      this.leftBounds = leftBounds;
+      this.rightPage = rightPage;
+      this.rightSize = rightSize;
+      this.rightBounds = rightBounds;
+    }
+
+    boolean isSplit() {
+      return rightBounds != null;
+    }
+  }
+
+  /** stands in for a leaf page in the splitters, with the bounds and entry count of the page */
+  private static class LeafProxy<T> extends LeafNode<T> {
+    private final int size;
+
+    LeafProxy(Rectangle bounds, int size) {
+      super(null, bounds);
+      this.size = size;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /** stands in for an inner page in the splitters, with the bounds and child count of the page */
+  private static class InnerProxy<T> extends InnerNode<T> {
+    private final int size;
+
+    InnerProxy(Rectangle bounds, int size) {
+      super(LeafNode.create((T) null, bounds));
+      this.size = size;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * create a new, empty tree in a file. An existing file is overwritten
+   *
+   * @param path the file for the pages
+   * @param codec writes and reads the elements
+   * @param splitterContext the rules for choosing subtrees and splitting nodes
+   * @param pageSize the size of each page in bytes
+   * @param poolPages how many pages to keep in memory
+   * @param policy how to choose the page to evict from a full pool
+   * @return the new tree
+   * @throws IOException if the file can not be written
+   */
+  public static <T> PagedRTree<T> create(
+      Path path,
+      ElementCodec<T> codec,
+      SplitterContext<T> splitterContext,
+      int pageSize,
+      int poolPages,
+      EvictionPolicy policy)
+      throws IOException {
+    Files.deleteIfExists(path);
+    PagedRTree<T> tree =
+        new PagedRTree<>(new PageFile(path, pageSize), codec, splitterContext, poolPages, policy);
+    tree.pageCount = 1;
+    tree.root = tree.allocate();
+    tree.writeLeaf(tree.root, new ArrayList<>());
+    tree.writeHeader();
+    return tree;
+  }
+
+  /**
+   * open a tree that was made by create
+   *
+   * @param path the file of pages
+   * @param codec writes and reads the elements
+   * @param splitterContext the rules for choosing subtrees and splitting nodes
+   * @param poolPages how many pages to keep in memory
+   * @param policy how to choose the page to evict from a full pool
+   * @return the tree in the file
+   * @throws IOException if the file can not be read or does not hold a paged tree
+   */
+  public static <T> PagedRTree<T> open(
+      Path path,
+      ElementCodec<T> codec,
+      SplitterContext<T> splitterContext,
+      int poolPages,
+      EvictionPolicy policy)
+      throws IOException {
+    int pageSize;
+    try (PageFile header = new PageFile(path, 3 * Integer.BYTES)) {
+      byte[] bytes = new byte[3 * Integer.BYTES];
+      header.read(0, bytes);
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+      if (in.readInt() != MAGIC) {
+        throw new IOException("not a paged RTree file");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("unsupported paged RTree version " + version);
+      }
+      pageSize = in.readInt();
+    }
+    PagedRTree<T> tree =
+        new PagedRTree<>(new PageFile(path, pageSize), codec, splitterContext, poolPages, policy);
+    tree.readHeader();
+    return tree;
+  }
+
+  private PagedRTree(
+      PageFile file,
+      ElementCodec<T> codec,
+      SplitterContext<T> splitterContext,
+      int poolPages,
+      EvictionPolicy policy) {
+    this.file = file;
+    this.pool = new BufferPool(file, poolPages, policy);
+    this.codec = codec;
+    this.splitterContext = splitterContext;
+  }
+
+  /** @return the number of elements in the tree */
+  public int count() {
+    return count;
+  }
+
+  /** @return the number of pages in the file, including the header */
+  public int pageCount() {
+    return pageCount;
+  }
+
+  /** @return how many page reads were answered from the BufferPool */
+  public long getHits() {
+    return pool.getHits();
+  }
+
+  /** @return how many page reads had to go to the file */
+  public long getMisses() {
+    return pool.getMisses();
+  }
+
+  /** @return how many changed pages were written back to the file */
+  public long getWrites() {
+    return pool.getWrites();
+  }
+
+  /**
+   * @param element the element to add
+   * @param bounds the bounds of the element
+   * @throws IOException if a page can not be read or written
+   */
+  public void add(T element, Rectangle bounds) throws IOException {
+    Inserted inserted = insert(root, height, Map.entry(element, bounds));
+    if (inserted.isSplit()) {
+      // the root was split. The new root holds the two halves
+      Children children = new Children();
+      children.add(root, inserted.size, inserted.leftBounds);
+      children.add(inserted.rightPage, inserted.rightSize, inserted.rightBounds);
+      root = allocate();
+      height++;
+      writeInner(root, children);
+      log.trace("new root page {}, height is now {}", root, height);
+    }
+    count++;
+    writeHeader();
+  }
+
+  /**
+   * @return the entry count of the page at pageId after the insert, and the halves if it had to
+   *     split. When the page splits, its left half stays in pageId
+   */
+  private Inserted insert(int pageId, int level, Map.Entry<T, Rectangle> entry) throws IOException {
+    if (level == 0) {
+      List<Map.Entry<T, Rectangle>> entries = readLeaf(pageId);
+      if (entries.size() < splitterContext.config.leafMaxEntries) {
+        entries.add(entry);
+        writeLeaf(pageId, entries);
+        return new Inserted(entries.size());
+      }
+      Pair<LeafNode<T>> pair =
+          splitterContext.leafSplitter.split(splitterContext.config, entries, entry);
+      int rightPage = allocate();
+      writeLeaf(pageId, new ArrayList<>(pair.left.map.entrySet()));
+      writeLeaf(rightPage, new ArrayList<>(pair.right.map.entrySet()));
+      return new Inserted(
+          pair.left.size(),
+          pair.left.getBounds(),
+          rightPage,
+          pair.right.size(),
+          pair.right.getBounds());
+    }
+    Children children = readInner(pageId);
+    int chosen = chooseSubtree(children, level, entry);
+    Inserted inserted = insert(children.pages.get(chosen), level - 1, entry);
+    children.sizes.set(chosen, inserted.size);
+    if (!inserted.isSplit()) {
+      children.bounds.set(chosen, children.bounds.get(chosen).union(entry.getValue()));
+      writeInner(pageId, children);
+      return new Inserted(children.pages.size());
+    }
+    children.bounds.set(chosen, inserted.leftBounds);
+    if (children.pages.size() < splitterContext.config.innerMaxEntries) {
+      children.add(inserted.rightPage, inserted.rightSize, inserted.rightBounds);
+      writeInner(pageId, children);
+      return new Inserted(children.pages.size());
+    }
+    return splitInner(pageId, level, children, inserted);
+  }
+
+  /**
+   * the splitters work on Nodes, so each child page is stood in for by a node with the same bounds
+   * and entry count, a LeafNode when the children are leaves and an InnerNode otherwise, so that
+   * the splitter sees the same tree shape as it would in memory
+   */
+  private List<Node<T>> proxies(
+      Children children, int level, IdentityHashMap<Node<T>, Integer> pages) {
+    List<Node<T>> proxies = new ArrayList<>(children.pages.size());
+    for (int i = 0; i < children.pages.size(); i++) {
+      proxies.add(
+          proxy(
+              children.pages.get(i), children.sizes.get(i), children.bounds.get(i), level, pages));
+    }
+    return proxies;
+  }
+
+  private Node<T> proxy(
+      int page, int size, Rectangle bounds, int level, IdentityHashMap<Node<T>, Integer> pages) {
+    Node<T> proxy = level == 1 ? new LeafProxy<>(bounds, size) : new InnerProxy<>(bounds, size);
+    pages.put(proxy, page);
+    return proxy;
+  }
+
+  /** @return the index of the child to insert the entry into */
+  private int chooseSubtree(Children children, int level, Map.Entry<T, Rectangle> entry) {
+    IdentityHashMap<Node<T>, Integer> pages = new IdentityHashMap<>();
+    InnerNode<T> node = InnerNode.create(proxies(children, level, pages));
+    Node<T> chosen = splitterContext.splitter.chooseSubtree(node, entry.getKey(), entry.getValue());
+    Integer page = pages.get(chosen);
+    if (page == null) {
+      throw new IllegalStateException("the splitter chose " + chosen + " which is not a child");
+    }
+    return children.pages.indexOf(page);
+  }
+
+  private Inserted splitInner(int pageId, int level, Children children, Inserted childSplit)
+      throws IOException {
+    IdentityHashMap<Node<T>, Integer> pages = new IdentityHashMap<>();
+    List<Node<T>> proxies = proxies(children, level, pages);
+    Node<T> newEntry =
+        proxy(childSplit.rightPage, childSplit.rightSize, childSplit.rightBounds, level, pages);
+    Pair<InnerNode<T>> pair =
+        splitterContext.splitter.split(splitterContext.config, proxies, newEntry);
+    Children left = new Children();
+    for (Node<T> proxy : pair.left.getChildren()) {
+      left.add(pages.get(proxy), proxy.size(), proxy.getBounds());
+    }
+    Children right = new Children();
+    for (Node<T> proxy : pair.right.getChildren()) {
+      right.add(pages.get(proxy), proxy.size(), proxy.getBounds());
+    }
+    int rightPage = allocate();
+    writeInner(pageId, left);
+    writeInner(rightPage, right);
+    return new Inserted(
+        left.pages.size(),
+        pair.left.getBounds(),
+        rightPage,
+        right.pages.size(),
+        pair.right.getBounds());
+  }
+
+  /** @return the bounds of all the elements, or Rectangle.IDENTITY if there are none */
+  public Rectangle getBounds() throws IOException {
+    Rectangle bounds = null;
+    if (height == 0) {
+      for (Map.Entry<T, Rectangle> entry : readLeaf(root)) {
+        bounds = bounds == null ? entry.getValue() : bounds.union(entry.getValue());
+      }
+    } else {
+      for (Rectangle r : readInner(root).bounds) {
+        bounds = bounds == null ? r : bounds.union(r);
+      }
+    }
+    return bounds == null ? Rectangle.IDENTITY : bounds;
+  }
+
+  /**
+   * @param shape a shape to filter the elements
+   * @return the elements whose bounds intersect with the passed shape
+   * @throws IOException if a page can not be read
+   */
+  public List<T> getVisibleElements(Rectangle shape) throws IOException {
+    List<T> visibleElements = new ArrayList<>();
+    visitVisibleElements(shape, (element, bounds) -> visibleElements.add(element));
+    return visibleElements;
+  }
+
+  /**
+   * @param shape the shape to search
+   * @param visitor called with each element whose bounds intersect with the shape
+   * @return false if the visitor stopped the search, true otherwise
+   * @throws IOException if a page can not be read
+   */
+  public boolean visitVisibleElements(Rectangle shape, ElementVisitor<T> visitor)
+      throws IOException {
+    return visit(root, height, shape, visitor);
+  }
+
+  private boolean visit(int pageId, int level, Rectangle shape, ElementVisitor<T> visitor)
+      throws IOException {
+    if (level == 0) {
+      for (Map.Entry<T, Rectangle> entry : readLeaf(pageId)) {
+        if (shape.intersects(entry.getValue())
+            && !visitor.visit(entry.getKey(), entry.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
+    Children children = readInner(pageId);
+    for (int i = 0; i < children.pages.size(); i++) {
+      if (shape.intersects(children.bounds.get(i))
+          && !visit(children.pages.get(i), level - 1, shape, visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * write all changed pages back to the file
+   *
+   * @throws IOException if a page can not be written
+   */
+  public void flush() throws IOException {
+    pool.flush();
+  }
+
+  /** flush and close the file */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      file.close();
+    }
+  }
+
+  private int allocate() throws IOException {
+    int pageId = pageCount++;
+    pool.create(pageId);
+    return pageId;
+  }
+
+  private void writeHeader() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(file.pageSize);
+    out.writeInt(root);
+    out.writeInt(height);
+    out.writeInt(count);
+    out.writeInt(pageCount);
+    store(0, bytes);
+  }
+
+  private void readHeader() throws IOException {
+    DataInputStream in = load(0);
+    in.skipBytes(3 * Integer.BYTES);
+    root = in.readInt();
+    height = in.readInt();
+    count = in.readInt();
+    pageCount = in.readInt();
+  }
+
+  private List<Map.Entry<T, Rectangle>> readLeaf(int pageId) throws IOException {
+    DataInputStream in = load(pageId);
+    if (in.readByte() != LEAF) {
+      throw new IOException("page " + pageId + " is not a leaf page");
+    }
+    int size = in.readInt();
+    List<Map.Entry<T, Rectangle>> entries = new ArrayList<>(size + 1);
+    for (int i = 0; i < size; i++) {
+      Rectangle r =
+          Rectangle.of(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+      entries.add(Map.entry(codec.read(in), r));
+    }
+    return entries;
+  }
+
+  private void writeLeaf(int pageId, List<Map.Entry<T, Rectangle>> entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(file.pageSize);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(LEAF);
+    out.writeInt(entries.size());
+    for (Map.Entry<T, Rectangle> entry : entries) {
+      Rectangle r = entry.getValue();
+      out.writeDouble(r.x);
+      out.writeDouble(r.y);
+      out.writeDouble(r.width);
+      out.writeDouble(r.height);
+      codec.write(entry.getKey(), out);
+    }
+    store(pageId, bytes);
+  }
+
+  private Children readInner(int pageId) throws IOException {
+    DataInputStream in = load(pageId);
+    if (in.readByte() != INNER) {
+      throw new IOException("page " + pageId + " is not an inner page");
+    }
+    int size = in.readInt();
+    Children children = new Children();
+    for (int i = 0; i < size; i++) {
+      children.add(
+          in.readInt(),
+          in.readInt(),
+          Rectangle.fromCorners(
+              in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble()));
+    }
+    return children;
+  }
+
+  private void writeInner(int pageId, Children children) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(file.pageSize);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(INNER);
+    out.writeInt(children.pages.size());
+    for (int i = 0; i < children.pages.size(); i++) {
+      Rectangle r = children.bounds.get(i);
+      out.writeInt(children.pages.get(i));
+      out.writeInt(children.sizes.get(i));
+      out.writeDouble(r.x);
+      out.writeDouble(r.y);
+      out.writeDouble(r.maxX);
+      out.writeDouble(r.maxY);
+    }
+    store(pageId, bytes);
+  }
+
+  private DataInputStream load(int pageId) throws IOException {
+    return new DataInputStream(new ByteArrayInputStream(pool.get(pageId)));
+  }
+
+  private void store(int pageId, ByteArrayOutputStream bytes) throws IOException {
+    if (bytes.size() > file.pageSize) {
+      throw new IllegalStateException(
+          "page "
+              + pageId
+              + " needs "
+              + bytes.size()
+              + " bytes but pages are "
+              + file.pageSize
+              + ". Use bigger pages or fewer entries per node");
+    }
+    byte[] page = pool.get(pageId);
+    byte[] written = bytes.toByteArray();
+    System.arraycopy(written, 0, page, 0, written.length);
+    pool.markDirty(pageId);
+  }
+
+  @Override
+  public String toString() {
+    return "PagedRTree{"
+        + "elements="
+        + count
+        + ", height="
+        + height
+        + ", pages="
+        + pageCount
+        + ", hits="
+        + getHits()
+        + ", misses="
+        + getMisses()
+        + '}';
+  }
+}
@@ -0,0 +1,61 @@
+package com.tom.rtree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * a range query that forks onto a ForkJoinPool. A node with more elements below it than the
+ * threshold gets a task for each of its children that intersect with the shape. Smaller subtrees
+ * are searched on the thread that reached them. Each task collects into its own list and the lists
+ * are joined on the way back up, so no collection is shared between threads.
+ *
+ * <p>The tree must not be changed while the query runs.
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+class ParallelRangeQuery<T> extends RecursiveTask<List<T>> {
+
+  private static final long serialVersionUID = 1L;
+
+  /** subtrees with no more elements than this are searched without forking */
+  static final int DEFAULT_THRESHOLD = 8192;
+
+  private final Node<T> node;
+  private final Rectangle shape;
+  private final int threshold;
+
+  ParallelRangeQuery(Node<T> node, Rectangle shape, int threshold) {
+    this.node = node;
+    this.shape = shape;
+    this.threshold = threshold;
+  }
+
+  @Override
+  protected List<T> compute() {
+    if (node instanceof LeafNode || node.count() <= threshold) {
+      List<T> visibleElements = new ArrayList<>();
+      node.visitVisibleElements(shape, (element, bounds) -> visibleElements.add(element));
+      return visibleElements;
+    }
+    List<ParallelRangeQuery<T>> tasks = new ArrayList<>();
+    for (Node<T> child : ((InnerNode<T>) node).getChildren()) {
+      if (shape.intersects(child.getBounds())) {
+        tasks.add(new ParallelRangeQuery<>(child, shape, threshold));
+      }
+    }
+    if (tasks.isEmpty()) {
+      return new ArrayList<>();
+    }
+    // fork all but the first, which this thread does itself
+    for (int i = tasks.size() - 1; i > 0; i--) {
+      tasks.get(i).fork();
+    }
+    List<T> visibleElements = tasks.get(0).compute();
+    for (int i = 1; i < tasks.size(); i++) {
+      visibleElements.addAll(tasks.get(i).join());
+    }
+    return visibleElements;
+  }
+}
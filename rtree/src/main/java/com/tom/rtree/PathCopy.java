@@ -0,0 +1,235 @@
+package com.tom.rtree;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * add and remove for persistent RTrees. No node that is reachable from an existing root is ever
+ * changed. The nodes on the path from the root to the changed leaf are copied and every other
+ * subtree is shared with the previous version, so a reader holding an older RTree keeps a
+ * consistent snapshot.
+ *
+ * <p>The parent of a node is the node that held it in the version it was made for. A copy is the
+ * parent of the new nodes below it but does not adopt the nodes it shares, so every version keeps
+ * the parents it was made with. A shared node does not know about the later copies that hold it, so
+ * parents are never followed in a persistent tree.
+ *
+ * @author Tom Nelson
+ */
+class PathCopy {
+
+  private static final Logger log = LoggerFactory.getLogger(PathCopy.class);
+
+  private PathCopy() {}
+
+  /**
+   * @param root the root of the current version
+   * @param splitterContext the R*Tree or R-Tree rules
+   * @param element the element to add
+   * @param bounds the bounds of the element
+   * @return the root of the new version
+   */
+  static <T> Node<T> add(
+      Node<T> root, SplitterContext<T> splitterContext, T element, Rectangle bounds) {
+    List<Node<T>> copies = insert(root, splitterContext, element, bounds);
+    if (copies.size() == 1) {
+      return copies.get(0);
+    }
+    log.trace("root was split");
+    return InnerNode.create(copies);
+  }
+
+  /** @return the copy of node with the element added, or the two halves if it had to split */
+  private static <T> List<Node<T>> insert(
+      Node<T> node, SplitterContext<T> splitterContext, T element, Rectangle bounds) {
+    RTreeConfig config = splitterContext.config;
+    if (node instanceof LeafNode) {
+      LeafNode<T> leafNode = (LeafNode<T>) node;
+      List<Map.Entry<T, Rectangle>> entries = new ArrayList<>(leafNode.map.entrySet());
+      if (entries.size() >= config.leafMaxEntries) {
+        Pair<LeafNode<T>> pair =
+            splitterContext.leafSplitter.split(config, entries, Map.entry(element, bounds));
+        return List.of(pair.left, pair.right);
+      }
+      entries.add(Map.entry(element, bounds));
+      return List.of(LeafNode.create(entries));
+    }
+    InnerNode<T> innerNode = (InnerNode<T>) node;
+    Node<T> chosen = splitterContext.splitter.chooseSubtree(innerNode, element, bounds);
+    List<Node<T>> children = new ArrayList<>(innerNode.getChildren());
+    int index = children.indexOf(chosen);
+    if (index < 0) {
+      throw new IllegalStateException("the splitter chose " + chosen + " which is not a child");
+    }
+    List<Node<T>> copies = insert(children.get(index), splitterContext, element, bounds);
+    children.set(index, copies.get(0));
+    if (copies.size() == 1) {
+      return List.of(parentOf(children, copies));
+    }
+    if (children.size() >= config.innerMaxEntries) {
+      return split(splitterContext, children, copies);
+    }
+    children.add(copies.get(1));
+    return List.of(parentOf(children, copies));
+  }
+
+  /**
+   * the splitter would make itself the parent of every child, shared or not, so it is given a
+   * stand-in with the bounds of each child and the halves are made from the children it chose
+   *
+   * @return the two halves of children and the second of the copies
+   */
+  private static <T> List<Node<T>> split(
+      SplitterContext<T> splitterContext, List<Node<T>> children, List<Node<T>> copies) {
+    IdentityHashMap<Node<T>, Node<T>> standIns = new IdentityHashMap<>();
+    List<Node<T>> proxies = new ArrayList<>(children.size());
+    for (Node<T> child : children) {
+      proxies.add(standIn(child, standIns));
+    }
+    Node<T> newEntry = standIn(copies.get(1), standIns);
+    Pair<InnerNode<T>> pair =
+        splitterContext.splitter.split(splitterContext.config, proxies, newEntry);
+    List<Node<T>> left = new ArrayList<>(pair.left.size());
+    for (Node<T> proxy : pair.left.getChildren()) {
+      left.add(standIns.get(proxy));
+    }
+    List<Node<T>> right = new ArrayList<>(pair.right.size());
+    for (Node<T> proxy : pair.right.getChildren()) {
+      right.add(standIns.get(proxy));
+    }
+    return List.of(parentOf(left, copies), parentOf(right, copies));
+  }
+
+  private static <T> Node<T> standIn(Node<T> child, IdentityHashMap<Node<T>, Node<T>> standIns) {
+    Node<T> standIn = LeafNode.create((T) null, child.getBounds());
+    standIns.put(standIn, child);
+    return standIn;
+  }
+
+  /**
+   * @param children the children of the new node, some shared with the previous version
+   * @param copies the children that were made for this version
+   * @return an InnerNode that is the parent of the copies but not of the shared children
+   */
+  private static <T> InnerNode<T> parentOf(List<Node<T>> children, List<Node<T>> copies) {
+    InnerNode<T> copy = InnerNode.sharing(children);
+    for (Node<T> child : children) {
+      if (copies.contains(child)) {
+        child.setParent(copy);
+      }
+    }
+    return copy;
+  }
+
+  /**
+   * @param root the root of the current version
+   * @param element the element to remove
+   * @param bounds the bounds the element was added with, or null to search every subtree
+   * @return the root of the new version, null if it is empty, or root itself if the element was not
+   *     found
+   */
+  static <T> Node<T> remove(Node<T> root, T element, Rectangle bounds) {
+    return delete(root, element, bounds);
+  }
+
+  /**
+   * @param root the root of the current version
+   * @param removals the elements to remove with the bounds they are stored with
+   * @return the root of the new version, or null if it is empty. Each node above a removed element
+   *     is copied once, however many of the elements are below it
+   */
+  static <T> Node<T> removeAll(Node<T> root, Map<T, Rectangle> removals) {
+    return deleteAll(root, new ArrayList<>(removals.entrySet()));
+  }
+
+  /**
+   * @return the copy of node without the elements, null if the copy would be empty, or node itself
+   *     if none of the elements are below it
+   */
+  private static <T> Node<T> deleteAll(Node<T> node, List<Map.Entry<T, Rectangle>> removals) {
+    if (node instanceof LeafNode) {
+      LeafNode<T> leafNode = (LeafNode<T>) node;
+      Set<T> goners = new HashSet<>();
+      for (Map.Entry<T, Rectangle> removal : removals) {
+        goners.add(removal.getKey());
+      }
+      List<Map.Entry<T, Rectangle>> entries = new ArrayList<>(leafNode.size());
+      for (Map.Entry<T, Rectangle> entry : leafNode.map.entrySet()) {
+        if (!goners.contains(entry.getKey())) {
+          entries.add(entry);
+        }
+      }
+      if (entries.size() == leafNode.size()) {
+        return node;
+      }
+      return entries.isEmpty() ? null : LeafNode.create(entries);
+    }
+    List<Node<T>> children = ((InnerNode<T>) node).getChildren();
+    List<Node<T>> kept = new ArrayList<>(children.size());
+    List<Node<T>> copies = new ArrayList<>();
+    for (Node<T> child : children) {
+      // only the elements that can be below the child
+      List<Map.Entry<T, Rectangle>> below = new ArrayList<>();
+      for (Map.Entry<T, Rectangle> removal : removals) {
+        if (child.getBounds().contains(removal.getValue())) {
+          below.add(removal);
+        }
+      }
+      Node<T> copy = below.isEmpty() ? child : deleteAll(child, below);
+      if (copy != null) {
+        kept.add(copy);
+        if (copy != child) {
+          copies.add(copy);
+        }
+      }
+    }
+    if (kept.size() == children.size() && copies.isEmpty()) {
+      return node;
+    }
+    return kept.isEmpty() ? null : parentOf(kept, copies);
+  }
+
+  /**
+   * @return the copy of node without the element, null if the copy would be empty, or node itself
+   *     if the element is not below it
+   */
+  private static <T> Node<T> delete(Node<T> node, T element, Rectangle bounds) {
+    if (bounds != null && !node.getBounds().contains(bounds)) {
+      return node;
+    }
+    if (node instanceof LeafNode) {
+      LeafNode<T> leafNode = (LeafNode<T>) node;
+      if (!leafNode.map.containsKey(element)) {
+        return node;
+      }
+      List<Map.Entry<T, Rectangle>> entries = new ArrayList<>(leafNode.size() - 1);
+      for (Map.Entry<T, Rectangle> entry : leafNode.map.entrySet()) {
+        if (!entry.getKey().equals(element)) {
+          entries.add(entry);
+        }
+      }
+      return entries.isEmpty() ? null : LeafNode.create(entries);
+    }
+    List<Node<T>> children = ((InnerNode<T>) node).getChildren();
+    for (int i = 0; i < children.size(); i++) {
+      Node<T> child = children.get(i);
+      Node<T> copy = delete(child, element, bounds);
+      if (copy != child) {
+        List<Node<T>> copies = new ArrayList<>(children);
+        if (copy == null) {
+          copies.remove(i);
+        } else {
+          copies.set(i, copy);
+        }
+        return copies.isEmpty() ? null : parentOf(copies, copy == null ? List.of() : List.of(copy));
+      }
+    }
+    return node;
+  }
+}
@@ -0,0 +1,17 @@
+package com.tom.rtree;
+
+/**
+ * how a FrozenRTree stores the corners of its bounds
+ *
+ * @author Tom Nelson
+ */
+public enum Precision {
+  /** 64 bit doubles, exactly as in the RTree */
+  DOUBLE,
+  /**
+   * 32 bit floats, half the memory. Each corner is rounded outward to the nearest float, so the
+   * stored bounds always contain the real ones. A query never misses an element, but may pass an
+   * element that only reaches the query shape by rounding
+   */
+  FLOAT
+}
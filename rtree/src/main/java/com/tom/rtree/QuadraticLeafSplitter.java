@@ -1,8 +1,6 @@
 package com.tom.rtree;
 
-import static com.tom.rtree.Node.M;
 import static com.tom.rtree.Node.area;
-import static com.tom.rtree.Node.m;
 
 import java.util.*;
 
@@ -16,8 +14,10 @@ public class QuadraticLeafSplitter<T> implements LeafSplitter<T> {
 
   @Override
   public Pair<LeafNode<T>> split(
-      Collection<Map.Entry<T, Rectangle>> entries, Map.Entry<T, Rectangle> newEntry) {
-    return quadraticSplit(entries, newEntry);
+      RTreeConfig config,
+      Collection<Map.Entry<T, Rectangle>> entries,
+      Map.Entry<T, Rectangle> newEntry) {
+    return quadraticSplit(config.leafMaxEntries, config.leafMinEntries, entries, newEntry);
   }
 
   private Optional<Map.Entry<T, Rectangle>> pickNext(
@@ -133,12 +133,14 @@ public class QuadraticLeafSplitter<T> implements LeafSplitter<T> {
    * combine the existing map elements with the new one and make a pair of leaf nodes to distribute
    * the entries into
    *
+   * @param M the most entries in a LeafNode
+   * @param m the fewest entries in a LeafNode after a split
    * @param entries Collection of entries to split
    * @param newEntry
    * @return
    */
   private Pair<LeafNode<T>> quadraticSplit(
-      Collection<Map.Entry<T, Rectangle>> entries, Map.Entry<T, Rectangle> newEntry) {
+      int M, int m, Collection<Map.Entry<T, Rectangle>> entries, Map.Entry<T, Rectangle> newEntry) {
     // make a collection of kids from leafNode that also include the new element
     // items will be removed from the entryList as they are distributed
     List<Map.Entry<T, Rectangle>> entryList = new ArrayList<>(entries);
@@ -1,8 +1,6 @@
 package com.tom.rtree;
 
-import static com.tom.rtree.Node.M;
 import static com.tom.rtree.Node.area;
-import static com.tom.rtree.Node.m;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -14,11 +12,19 @@ import java.util.Optional;
  */
 public class QuadraticSplitter<T> extends AbstractSplitter<T> implements Splitter<T> {
 
-  public Pair<InnerNode<T>> split(List<Node<T>> children, Node<T> newEntry) {
-    return quadraticSplit(children, newEntry);
+  public Pair<InnerNode<T>> split(RTreeConfig config, List<Node<T>> children, Node<T> newEntry) {
+    return quadraticSplit(config.innerMaxEntries, config.innerMinEntries, children, newEntry);
   }
 
-  private Pair<InnerNode<T>> quadraticSplit(List<Node<T>> children, Node<T> newEntry) {
+  /**
+   * @param M the most children in an InnerNode
+   * @param m the fewest children in an InnerNode after a split
+   * @param children the children of the full node
+   * @param newEntry the child that did not fit
+   * @return the pair of new nodes
+   */
+  private Pair<InnerNode<T>> quadraticSplit(
+      int M, int m, List<Node<T>> children, Node<T> newEntry) {
     // make a collection of kids from leafNode that also include the new element
     // items will be removed from the entryList as they are distributed
     List<Node<T>> entryList = new ArrayList<>(children);
@@ -147,7 +153,7 @@ public class QuadraticSplitter<T> extends AbstractSplitter<T> implements Splitte
     return winner;
   }
 
-  public Optional<Node<T>> chooseSubtree(InnerNode<T> nodeToSplit, T element, Rectangle bounds) {
+  public Node<T> chooseSubtree(InnerNode<T> nodeToSplit, T element, Rectangle bounds) {
     return leastEnlargementThenAreaThenKids(nodeToSplit, bounds);
   }
 }
@@ -0,0 +1,118 @@
+package com.tom.rtree;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * a lazy walk of the elements whose bounds intersect with a shape. Nodes are opened only as the
+ * walk reaches them, and a split hands off whole subtrees, so a parallel stream divides the work
+ * along the structure of the tree.
+ *
+ * <p>The tree must not be changed while the walk is in progress.
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+class QuerySpliterator<T> implements Spliterator<Map.Entry<T, Rectangle>> {
+
+  private final Rectangle shape;
+
+  /** nodes that intersect with the shape and have not been opened yet */
+  private final Deque<Node<T>> pending;
+
+  /** the entries of the LeafNode being walked */
+  private Iterator<Map.Entry<T, Rectangle>> entries = Collections.emptyIterator();
+
+  QuerySpliterator(Node<T> root, Rectangle shape) {
+    this(new ArrayDeque<>(), shape);
+    if (shape.intersects(root.getBounds())) {
+      pending.push(root);
+    }
+  }
+
+  private QuerySpliterator(Deque<Node<T>> pending, Rectangle shape) {
+    this.pending = pending;
+    this.shape = shape;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super Map.Entry<T, Rectangle>> action) {
+    while (true) {
+      while (entries.hasNext()) {
+        Map.Entry<T, Rectangle> entry = entries.next();
+        if (shape.intersects(entry.getValue())) {
+          // callers get a copy, as the bounds in the LeafNode must not be replaced
+          action.accept(Map.entry(entry.getKey(), entry.getValue()));
+          return true;
+        }
+      }
+      if (pending.isEmpty()) {
+        return false;
+      }
+      open(pending.pop());
+    }
+  }
+
+  /**
+   * walk into a node. A LeafNode's entries become the current entries, an InnerNode's intersecting
+   * children are pushed to be opened later
+   */
+  private void open(Node<T> node) {
+    if (node instanceof LeafNode) {
+      entries = ((LeafNode<T>) node).map.entrySet().iterator();
+    } else {
+      List<Node<T>> children = ((InnerNode<T>) node).getChildren();
+      for (int i = children.size() - 1; i >= 0; i--) {
+        Node<T> child = children.get(i);
+        if (shape.intersects(child.getBounds())) {
+          pending.push(child);
+        }
+      }
+    }
+  }
+
+  /**
+   * hand off half of the pending subtrees. If only one InnerNode is pending, it is opened first so
+   * that its children can be divided
+   *
+   * @return a Spliterator for the subtrees that were handed off, or null if there is nothing to
+   *     split
+   */
+  @Override
+  public Spliterator<Map.Entry<T, Rectangle>> trySplit() {
+    while (pending.size() == 1 && pending.peek() instanceof InnerNode) {
+      open(pending.pop());
+    }
+    int size = pending.size();
+    if (size < 2) {
+      return null;
+    }
+    // the bottom of the stack holds the nodes nearest the root, which are the biggest subtrees
+    Deque<Node<T>> split = new ArrayDeque<>();
+    for (int i = 0; i < size / 2; i++) {
+      split.push(pending.removeLast());
+    }
+    return new QuerySpliterator<>(split, shape);
+  }
+
+  /** @return the number of elements below the pending nodes, which is at least the number left */
+  @Override
+  public long estimateSize() {
+    long estimate = 0;
+    for (Node<T> node : pending) {
+      estimate += node.count();
+    }
+    return entries.hasNext() ? estimate + 1 : estimate;
+  }
+
+  @Override
+  public int characteristics() {
+    return DISTINCT | NONNULL;
+  }
+}
@@ -1,8 +1,5 @@
 package com.tom.rtree;
 
-import static com.tom.rtree.Node.M;
-import static com.tom.rtree.Node.m;
-
 import java.util.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,13 +19,17 @@ public class RStarLeafSplitter<T> implements LeafSplitter<T> {
       new VerticalEdgeMapEntryComparator();
 
   public Pair<LeafNode<T>> split(
-      Collection<Map.Entry<T, Rectangle>> entries, Map.Entry<T, Rectangle> newEntry) {
-    return chooseSplitNodes(entries, newEntry);
+      RTreeConfig config,
+      Collection<Map.Entry<T, Rectangle>> entries,
+      Map.Entry<T, Rectangle> newEntry) {
+    return chooseSplitNodes(config.leafMinEntries, entries, newEntry);
   }
 
   private Pair<LeafNode<T>> chooseSplitNodes(
-      Collection<Map.Entry<T, Rectangle>> entries, Map.Entry<T, Rectangle> newEntry) {
-    Pair<List<Map.Entry<T, Rectangle>>> pair = chooseSplit(entries, newEntry);
+      int minEntries,
+      Collection<Map.Entry<T, Rectangle>> entries,
+      Map.Entry<T, Rectangle> newEntry) {
+    Pair<List<Map.Entry<T, Rectangle>>> pair = chooseSplit(minEntries, entries, newEntry);
     LeafNode<T> leafNodeLeft = LeafNode.create(pair.left);
     LeafNode<T> leafNodeRight = LeafNode.create(pair.right);
     return Pair.of(leafNodeLeft, leafNodeRight);
@@ -37,12 +38,15 @@ public class RStarLeafSplitter<T> implements LeafSplitter<T> {
   /**
    * R*-Tree method
    *
+   * @param minEntries the fewest entries either side of the split may have
    * @param entries
    * @param newEntry
    * @return
    */
   private Pair<List<Map.Entry<T, Rectangle>>> chooseSplit(
-      Collection<Map.Entry<T, Rectangle>> entries, Map.Entry<T, Rectangle> newEntry) {
+      int minEntries,
+      Collection<Map.Entry<T, Rectangle>> entries,
+      Map.Entry<T, Rectangle> newEntry) {
     // make 2 lists to sort
     List<Map.Entry<T, Rectangle>> xAxisList = new ArrayList<>(entries);
     xAxisList.add(newEntry);
@@ -58,11 +62,11 @@ public class RStarLeafSplitter<T> implements LeafSplitter<T> {
     List<Pair<List<Map.Entry<T, Rectangle>>>> verticalGroup = new ArrayList<>();
 
     // iterate over the lists to create collections with different midpoints
-    for (int k = 0; k < M - 2 * m + 2; k++) {
-      horizontalGroup.add(
-          Pair.of(xAxisList.subList(0, m - 1 + k), xAxisList.subList(m - 1 + k, xAxisList.size())));
-      verticalGroup.add(
-          Pair.of(yAxisList.subList(0, m - 1 + k), yAxisList.subList(m - 1 + k, yAxisList.size())));
+    // each side of a midpoint has at least minEntries
+    int size = xAxisList.size();
+    for (int k = minEntries; k <= size - minEntries; k++) {
+      horizontalGroup.add(Pair.of(xAxisList.subList(0, k), xAxisList.subList(k, size)));
+      verticalGroup.add(Pair.of(yAxisList.subList(0, k), yAxisList.subList(k, size)));
     }
     if (log.isTraceEnabled()) {
       log.trace("horizontalGroup size is {}", horizontalGroup.size());
@@ -1,7 +1,5 @@
 package com.tom.rtree;
 
-import static com.tom.rtree.Node.M;
-import static com.tom.rtree.Node.m;
 import static com.tom.rtree.Node.nodeArea;
 import static com.tom.rtree.Node.nodeMargin;
 import static com.tom.rtree.Node.nodeOverlap;
@@ -21,18 +19,20 @@ public class RStarSplitter<T> extends AbstractSplitter<T> implements Splitter<T>
   private Comparator<Node<T>> horizontalEdgeComparator = new HorizontalEdgeNodeComparator();
   private Comparator verticalEdgeComparator = new VerticalEdgeNodeComparator();
 
-  public Pair<InnerNode<T>> split(List<Node<T>> children, Node<T> newEntry) {
-    return chooseSplitNodes(children, newEntry);
+  public Pair<InnerNode<T>> split(RTreeConfig config, List<Node<T>> children, Node<T> newEntry) {
+    return chooseSplitNodes(config.innerMinEntries, children, newEntry);
   }
 
-  private Pair<InnerNode<T>> chooseSplitNodes(Collection<Node<T>> entries, Node<T> newEntry) {
-    Pair<List<Node<T>>> pair = chooseSplit(entries, newEntry);
+  private Pair<InnerNode<T>> chooseSplitNodes(
+      int minEntries, Collection<Node<T>> entries, Node<T> newEntry) {
+    Pair<List<Node<T>>> pair = chooseSplit(minEntries, entries, newEntry);
     InnerNode<T> innerNodeLeft = InnerNode.create(pair.left);
     InnerNode<T> innerNodeRight = InnerNode.create(pair.right);
     return Pair.of(innerNodeLeft, innerNodeRight);
   }
 
-  private Pair<List<Node<T>>> chooseSplit(Collection<Node<T>> entries, Node<T> newEntry) {
+  private Pair<List<Node<T>>> chooseSplit(
+      int minEntries, Collection<Node<T>> entries, Node<T> newEntry) {
     // make 2 lists to sort
     List<Node<T>> xAxisList = new ArrayList<>(entries);
     xAxisList.add(newEntry);
@@ -45,11 +45,11 @@ public class RStarSplitter<T> extends AbstractSplitter<T> implements Splitter<T>
     List<Pair<List<Node<T>>>> horizontalGroup = new ArrayList<>();
     List<Pair<List<Node<T>>>> verticalGroup = new ArrayList<>();
 
-    for (int k = 0; k < M - 2 * m + 2; k++) {
-      horizontalGroup.add(
-          Pair.of(xAxisList.subList(0, m - 1 + k), xAxisList.subList(m - 1 + k, xAxisList.size())));
-      verticalGroup.add(
-          Pair.of(yAxisList.subList(0, m - 1 + k), yAxisList.subList(m - 1 + k, yAxisList.size())));
+    // each side of a midpoint has at least minEntries
+    int size = xAxisList.size();
+    for (int k = minEntries; k <= size - minEntries; k++) {
+      horizontalGroup.add(Pair.of(xAxisList.subList(0, k), xAxisList.subList(k, size)));
+      verticalGroup.add(Pair.of(yAxisList.subList(0, k), yAxisList.subList(k, size)));
     }
     int sumXMarginValue = 0;
     for (Pair<List<Node<T>>> pair : horizontalGroup) {
@@ -98,7 +98,7 @@ public class RStarSplitter<T> extends AbstractSplitter<T> implements Splitter<T>
   }
 
   @Override
-  public Optional<Node<T>> chooseSubtree(InnerNode<T> nodeToSplit, T element, Rectangle bounds) {
+  public Node<T> chooseSubtree(InnerNode<T> nodeToSplit, T element, Rectangle bounds) {
     if (nodeToSplit.isLeafChildren()) {
       return leastOverlapThenEnlargementThenAreaThenKids(nodeToSplit, bounds); //R*-Tree
     } else {
@@ -1,6 +1,10 @@
 package com.tom.rtree;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,6 +26,12 @@ public class RTree<T> {
   /** the root of the R-Tree */
   private final Optional<Node<T>> root;
 
+  /** when present, maps each element to the LeafNode that holds it */
+  private final Optional<LeafIndex<T>> leafIndex;
+
+  /** when true, add and remove copy the changed path instead of changing the nodes in place */
+  private final boolean persistent;
+
   /** @return the root of the R-Tree */
   public Optional<Node<T>> getRoot() {
     return root;
@@ -29,7 +39,18 @@ public class RTree<T> {
 
   /** create an empty R-Tree */
   private RTree() {
+    this(Optional.empty());
+  }
+
+  /**
+   * create an empty R-Tree
+   *
+   * @param leafIndex the element to LeafNode index, if the tree is indexed
+   */
+  private RTree(Optional<LeafIndex<T>> leafIndex) {
     root = Optional.empty();
+    this.leafIndex = leafIndex;
+    this.persistent = false;
   }
 
   /**
@@ -38,9 +59,32 @@ public class RTree<T> {
    * @param node the node that will be the root
    */
   private RTree(Node<T> node) {
+    this(node, Optional.empty());
+  }
+
+  /**
+   * create an R-Tree with the passed Node as the root
+   *
+   * @param node the node that will be the root
+   * @param leafIndex the element to LeafNode index for node, if the tree is indexed
+   */
+  private RTree(Node<T> node, Optional<LeafIndex<T>> leafIndex) {
     if (!node.getParent().isEmpty())
       throw new RuntimeException("Error creating R-Tree with root that has parent");
     root = Optional.of(node);
+    this.leafIndex = leafIndex;
+    this.persistent = false;
+  }
+
+  /**
+   * create a persistent R-Tree
+   *
+   * @param root the root of this version, or null if it is empty
+   */
+  private RTree(Node<T> root, boolean persistent) {
+    this.root = Optional.ofNullable(root);
+    this.leafIndex = Optional.empty();
+    this.persistent = persistent;
   }
 
   /**
@@ -53,6 +97,51 @@ public class RTree<T> {
     return new RTree();
   }
 
+  /**
+   * @param root a root node with no parent
+   * @return an R-Tree around an existing root
+   */
+  static <T> RTree<T> create(Node<T> root) {
+    return new RTree<>(root);
+  }
+
+  /**
+   * create and return an empty R-Tree that keeps an index of each element to the LeafNode that
+   * holds it. remove and getContainingLeaf go straight to the LeafNode instead of searching the
+   * tree, at the cost of one map entry per element. The trees returned by add, remove and bulkAdd
+   * are indexed when the passed tree is
+   *
+   * @param <T>
+   * @return an empty, indexed R-Tree
+   */
+  public static <T> RTree<T> createIndexed() {
+    return new RTree<>(Optional.of(new LeafIndex<>()));
+  }
+
+  /**
+   * create and return an empty persistent R-Tree. add and remove never change the nodes of the tree
+   * they are passed. They copy the path from the root to the changed leaf and share the rest, so
+   * every RTree they return is an unchanging snapshot that can be read without locks while later
+   * versions are made. The trees returned by add, remove and bulkAdd are persistent when the passed
+   * tree is
+   *
+   * @param <T>
+   * @return an empty, persistent R-Tree
+   */
+  public static <T> RTree<T> createPersistent() {
+    return new RTree<>(null, true);
+  }
+
+  /** @return true if add and remove leave this R-Tree unchanged */
+  public boolean isPersistent() {
+    return persistent;
+  }
+
+  /** @return true if this R-Tree keeps an element to LeafNode index */
+  public boolean isIndexed() {
+    return leafIndex.isPresent();
+  }
+
   public static <T> RTree<T> addAll(
       RTree<T> rtree,
       SplitterContext<T> splitterContext,
@@ -74,15 +163,28 @@ public class RTree<T> {
    * @param splitterContext the R*Tree or R-Tree rules
    * @param element to add to the tree
    * @param bounds for the element to add
-   * @return a new RTree containing the added element
+   * @return an RTree containing the added element. A tree that is not persistent is returned itself
+   *     unless its root changed
    */
   public static <T> RTree<T> add(
       RTree<T> rtree, SplitterContext<T> splitterContext, T element, Rectangle bounds) {
+    if (rtree.persistent) {
+      return new RTree<>(
+          rtree.root.isPresent()
+              ? PathCopy.add(rtree.root.get(), splitterContext, element, bounds)
+              : LeafNode.create(element, bounds),
+          true);
+    }
+    if (rtree.leafIndex.isPresent()) {
+      splitterContext = rtree.leafIndex.get().contextFor(splitterContext);
+    }
     // see if the root is not present (i.e. the RTree is empty
     if (!rtree.root.isPresent()) {
       // The first element addded to an empty RTree
       // Return a new RTree with the new LeafNode as its root
-      return new RTree(LeafNode.create(element, bounds));
+      LeafNode<T> leafNode = LeafNode.create(element, bounds);
+      rtree.leafIndex.ifPresent(index -> index.put(element, leafNode));
+      return new RTree(leafNode, rtree.leafIndex);
     }
     // otherwise...
     Node<T> node = rtree.root.get();
@@ -93,7 +195,7 @@ public class RTree<T> {
       Node<T> got = leafNode.add(splitterContext, element, bounds);
       if (!got.getParent().isEmpty())
         throw new RuntimeException("return from LeafVertex add has a parent");
-      return new RTree(got);
+      return got == node ? rtree : new RTree(got, rtree.leafIndex);
 
     } else {
 
@@ -104,22 +206,72 @@ public class RTree<T> {
       }
       if (!got.getParent().isEmpty())
         throw new RuntimeException("return from InnerVertex add has a parent");
-      return new RTree(got);
+      // the tree is mutable, so it is only new if the root split
+      return got == node ? rtree : new RTree(got, rtree.leafIndex);
     }
   }
 
+  /**
+   * pack the elements of the passed RTree and the items into a new RTree with the
+   * Sort-Tile-Recursive bulk loader
+   *
+   * @param rtree the tree whose elements are included in the new tree
+   * @param splitterContext the R*Tree or R-Tree rules
+   * @param items the new elements and their bounds
+   * @return a new RTree containing the elements of rtree and the items
+   */
   public static <T> RTree<T> bulkAdd(
       RTree<T> rtree,
       SplitterContext<T> splitterContext,
       Collection<Map.Entry<T, Rectangle>> items) {
-    // sort the items
-    List<Map.Entry<T, Rectangle>> sortedList = new ArrayList<>();
-    sortedList.addAll(items);
-    sortedList.sort(new HorizontalCenterNodeComparator<T>());
-    for (Map.Entry<T, Rectangle> entry : sortedList) {
-      rtree = RTree.add(rtree, splitterContext, entry.getKey(), entry.getValue());
+    return bulkAdd(rtree, splitterContext, new STRBulkLoader<>(), items);
+  }
+
+  /**
+   * pack the elements of the passed RTree and the items into a new RTree with the passed
+   * BulkLoader. No splits or subtree choices are made
+   *
+   * @param rtree the tree whose elements are included in the new tree
+   * @param splitterContext the R*Tree or R-Tree rules
+   * @param bulkLoader packs the entries into nodes
+   * @param items the new elements and their bounds
+   * @return a new RTree containing the elements of rtree and the items
+   */
+  public static <T> RTree<T> bulkAdd(
+      RTree<T> rtree,
+      SplitterContext<T> splitterContext,
+      BulkLoader<T> bulkLoader,
+      Collection<Map.Entry<T, Rectangle>> items) {
+    List<Map.Entry<T, Rectangle>> entries = new ArrayList<>(rtree.count() + items.size());
+    if (rtree.root.isPresent()) {
+      collectEntries(rtree.root.get(), entries);
     }
-    return rtree;
+    entries.addAll(items);
+    if (entries.isEmpty()) {
+      return rtree;
+    }
+    Node<T> root = bulkLoader.load(splitterContext, entries);
+    if (rtree.persistent) {
+      return new RTree<>(root, true);
+    }
+    if (rtree.leafIndex.isPresent()) {
+      LeafIndex<T> leafIndex = new LeafIndex<>();
+      leafIndex.putAll(root);
+      return new RTree(root, Optional.of(leafIndex));
+    }
+    return new RTree(root);
+  }
+
+  private static <T> List<Map.Entry<T, Rectangle>> collectEntries(
+      Node<T> node, List<Map.Entry<T, Rectangle>> entries) {
+    if (node instanceof LeafNode) {
+      entries.addAll(((LeafNode<T>) node).map.entrySet());
+    } else {
+      for (Node<T> kid : ((InnerNode<T>) node).getChildren()) {
+        collectEntries(kid, entries);
+      }
+    }
+    return entries;
   }
 
   public static <T> RTree<T> removeForReinsert(
@@ -261,21 +413,650 @@ public class RTree<T> {
    */
   public static <T> RTree<T> remove(RTree<T> rtree, T element) {
     log.trace("want to remove {} from tree size {}", element, rtree.count());
+    if (rtree.persistent) {
+      return removePersistent(rtree, element, null);
+    }
+    if (!rtree.root.isPresent()) {
+      // this tree is empty
+      return new RTree(rtree.leafIndex);
+    }
+    Node<T> rootNode = rtree.root.get();
+    if (rtree.leafIndex.isPresent()) {
+      // go straight to the LeafNode that holds the element
+      return remove(rtree, rtree.leafIndex.get().get(element), element);
+    } else {
+      rootNode.remove(element);
+    }
+
+    // if the root is empty, return a new empty RTree, otherwise, return this
+    if (rootNode.count() == 0) {
+      return new RTree(rtree.leafIndex);
+    } else {
+      return rtree;
+    }
+  }
+
+  /**
+   * remove an element from the tree, searching only the nodes whose bounds contain the bounds that
+   * the element was added with
+   *
+   * @param rtree the tree to remove from
+   * @param element the element to remove
+   * @param bounds the bounds the element was last added or updated with
+   * @return the RTree without the element
+   */
+  public static <T> RTree<T> remove(RTree<T> rtree, T element, Rectangle bounds) {
+    log.trace("want to remove {} at {}", element, bounds);
+    if (rtree.persistent) {
+      return removePersistent(rtree, element, bounds);
+    }
     if (!rtree.root.isPresent()) {
       // this tree is empty
-      return new RTree();
+      return new RTree(rtree.leafIndex);
+    }
+    if (rtree.leafIndex.isPresent()) {
+      return remove(rtree, rtree.leafIndex.get().get(element), element);
+    }
+    Node<T> rootNode = rtree.root.get();
+    LeafNode<T> containingLeaf =
+        rootNode.getBounds().contains(bounds) ? rootNode.getContainingLeaf(element, bounds) : null;
+    return remove(rtree, containingLeaf, element);
+  }
+
+  /**
+   * move an element to new bounds, searching only the nodes whose bounds contain the old bounds. If
+   * the old bounds are stale the whole tree is searched, so the element is never left in the tree
+   * twice
+   *
+   * @param rtree the tree holding the element
+   * @param splitterContext the R*Tree or R-Tree rules
+   * @param element the element to move
+   * @param oldBounds the bounds the element was last added or updated with
+   * @param newBounds the new bounds for the element
+   * @return the RTree with the element at its new bounds
+   */
+  public static <T> RTree<T> update(
+      RTree<T> rtree,
+      SplitterContext<T> splitterContext,
+      T element,
+      Rectangle oldBounds,
+      Rectangle newBounds) {
+    rtree = removeFound(rtree, element, oldBounds);
+    return add(rtree, splitterContext, element, newBounds);
+  }
+
+  /**
+   * move an element to new bounds that are inside the bounds of its LeafNode. See move with slack
+   *
+   * @param rtree the tree holding the element
+   * @param splitterContext the R*Tree or R-Tree rules
+   * @param element the element to move
+   * @param newBounds the new bounds for the element
+   * @return the RTree with the element at its new bounds
+   */
+  public static <T> RTree<T> move(
+      RTree<T> rtree, SplitterContext<T> splitterContext, T element, Rectangle newBounds) {
+    return move(rtree, splitterContext, element, newBounds, 0);
+  }
+
+  /**
+   * move an element to new bounds, for elements that move a little at a time. If the new bounds fit
+   * inside the bounds of the LeafNode that holds the element, grown by slack on every side, the
+   * element is updated in place and only the ancestors whose bounds change are recalculated.
+   * Otherwise the element is reinserted below the lowest ancestor whose bounds, grown by slack,
+   * contain the new bounds, and only when there is none is it removed and added again from the
+   * root. The element is found through the leaf index when the tree is indexed, otherwise by a
+   * search of the tree
+   *
+   * @param rtree the tree holding the element
+   * @param splitterContext the R*Tree or R-Tree rules
+   * @param element the element to move
+   * @param newBounds the new bounds for the element
+   * @param slack how far the new bounds may stick out of the bounds of a node that keeps them
+   * @return the RTree with the element at its new bounds
+   */
+  public static <T> RTree<T> move(
+      RTree<T> rtree,
+      SplitterContext<T> splitterContext,
+      T element,
+      Rectangle newBounds,
+      double slack) {
+    if (rtree.persistent) {
+      return add(removePersistent(rtree, element, null), splitterContext, element, newBounds);
+    }
+    LeafNode<T> leafNode = rtree.getContainingLeaf(element);
+    if (leafNode == null) {
+      log.warn("{} is not in this tree! ", element);
+      return add(rtree, splitterContext, element, newBounds);
+    }
+    if (contains(leafNode.getBounds(), newBounds, slack)) {
+      log.trace("move {} in place", element);
+      Rectangle before = leafNode.getBounds();
+      leafNode.map.put(element, newBounds);
+      leafNode.map.recalculateBounds();
+      if (!before.equals(leafNode.getBounds())) {
+        recalculateAncestors(leafNode);
+      }
+      return rtree;
+    }
+    InnerNode<T> ancestor = null;
+    if (leafNode.size() > 1) {
+      // an emptied LeafNode would be removed, and could take the ancestor with it
+      Optional<Node<T>> parent = leafNode.getParent();
+      while (parent.isPresent() && ancestor == null) {
+        if (contains(parent.get().getBounds(), newBounds, slack)) {
+          ancestor = (InnerNode<T>) parent.get();
+        }
+        parent = parent.get().getParent();
+      }
+    }
+    if (ancestor == null) {
+      return add(remove(rtree, leafNode, element), splitterContext, element, newBounds);
+    }
+    log.trace("reinsert {} below {}", element, ancestor.getBounds());
+    // take the element out without the LeafNode recalculating every bounds up to the root. Only the
+    // nodes up to the ancestor are recalculated now, and the ones above it after the add
+    leafNode.map.remove(element);
+    InnerNode<T> node = (InnerNode<T>) leafNode.getParent().get();
+    node.countChanged(-1);
+    node.recalculate();
+    while (node != ancestor) {
+      node = (InnerNode<T>) node.getParent().get();
+      node.recalculate();
+    }
+    if (rtree.leafIndex.isPresent()) {
+      rtree.leafIndex.get().remove(element);
+      splitterContext = rtree.leafIndex.get().contextFor(splitterContext);
+    }
+    // count the element back into the nodes above the ancestor and grow them to cover it before the
+    // add, which may split the ancestor and the nodes above it
+    for (Optional<Node<T>> parent = ancestor.getParent();
+        parent.isPresent();
+        parent = parent.get().getParent()) {
+      ((InnerNode<T>) parent.get()).enlarge(newBounds);
+    }
+    Node<T> top = ancestor.add(splitterContext, element, newBounds);
+    while (top.getParent().isPresent()) {
+      top = top.getParent().get();
+    }
+    // the nodes above the ancestor still cover the old bounds of the element. Recalculate the whole
+    // path from the LeafNode that now holds it, since a split can leave any node on it changed
+    LeafNode<T> newLeaf =
+        rtree.leafIndex.isPresent()
+            ? rtree.leafIndex.get().get(element)
+            : top.getContainingLeaf(element, newBounds);
+    for (Optional<Node<T>> parent = newLeaf.getParent();
+        parent.isPresent();
+        parent = parent.get().getParent()) {
+      ((InnerNode<T>) parent.get()).recalculate();
+    }
+    return top == rtree.root.get() ? rtree : new RTree(top, rtree.leafIndex);
+  }
+
+  /** @return true if inner fits inside outer grown by slack on every side */
+  private static boolean contains(Rectangle outer, Rectangle inner, double slack) {
+    return inner.x >= outer.x - slack
+        && inner.y >= outer.y - slack
+        && inner.maxX <= outer.maxX + slack
+        && inner.maxY <= outer.maxY + slack;
+  }
+
+  /**
+   * recalculate the bounds of the ancestors of the passed node, stopping at the first one whose
+   * bounds do not change
+   */
+  private static <T> void recalculateAncestors(Node<T> node) {
+    Optional<Node<T>> parent = node.getParent();
+    while (parent.isPresent()) {
+      InnerNode<T> innerNode = (InnerNode<T>) parent.get();
+      Rectangle before = innerNode.getBounds();
+      innerNode.recalculate();
+      if (before.equals(innerNode.getBounds())) {
+        return;
+      }
+      parent = innerNode.getParent();
+    }
+  }
+
+  /**
+   * apply a batch of adds, removes and moves. The removes are grouped by the LeafNode that holds
+   * the element, so each LeafNode recalculates its bounds once, and then each InnerNode above a
+   * changed LeafNode recalculates its bounds and count once, deepest first. The adds are grouped by
+   * the LeafNode each one would be added to in the tree left by the removes. The adds that fit in
+   * their LeafNode are put there and the InnerNodes above are recalculated once in the same way.
+   * The adds that would overflow a LeafNode are added one at a time, so that it is split by the
+   * rules of the splitterContext. A persistent tree is copied once for all of the removes, and then
+   * once for each add
+   *
+   * @param rtree the tree to change
+   * @param splitterContext the R*Tree or R-Tree rules for the adds
+   * @param batch the changes to apply
+   * @return the RTree with the batch applied
+   */
+  public static <T> RTree<T> apply(
+      RTree<T> rtree, SplitterContext<T> splitterContext, Batch<T> batch) {
+    log.trace("apply {} removals and {} additions", batch.removals.size(), batch.additions.size());
+    if (rtree.root.isPresent() && !batch.removals.isEmpty()) {
+      rtree =
+          rtree.persistent
+              ? removeAllPersistent(rtree, batch.removals.entrySet())
+              : removeAll(rtree, batch.removals.entrySet());
+    }
+    if (rtree.persistent || !rtree.root.isPresent()) {
+      return addAll(rtree, splitterContext, batch.additions.entrySet());
+    }
+    return insertAll(rtree, splitterContext, batch.additions.entrySet());
+  }
+
+  /**
+   * @param rtree a tree that is not persistent and not empty
+   * @param removals the elements to remove, with the bounds they were added with or null. Bounds
+   *     that miss the element fall back to a search of the whole tree
+   * @return the RTree without the elements
+   */
+  private static <T> RTree<T> removeAll(
+      RTree<T> rtree, Collection<Map.Entry<T, Rectangle>> removals) {
+    Node<T> rootNode = rtree.root.get();
+    Map<LeafNode<T>, List<T>> byLeaf = new IdentityHashMap<>();
+    for (Map.Entry<T, Rectangle> removal : removals) {
+      T element = removal.getKey();
+      // stale bounds fall back to a search of the whole tree, so a move is never added twice
+      LeafNode<T> containingLeaf = findLeaf(rtree, element, removal.getValue());
+      if (containingLeaf == null) {
+        log.warn("{} is not in this tree! ", element);
+        continue;
+      }
+      byLeaf.computeIfAbsent(containingLeaf, leaf -> new ArrayList<>()).add(element);
+    }
+    Set<InnerNode<T>> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Map.Entry<LeafNode<T>, List<T>> entry : byLeaf.entrySet()) {
+      LeafNode<T> leafNode = entry.getKey();
+      leafNode.map.removeAll(entry.getValue());
+      rtree.leafIndex.ifPresent(leafIndex -> entry.getValue().forEach(leafIndex::remove));
+      if (leafNode.getParent().isPresent()) {
+        InnerNode<T> parentNode = (InnerNode<T>) leafNode.getParent().get();
+        if (leafNode.size() == 0) {
+          parentNode.removeNode(leafNode);
+        }
+        changed.add(parentNode);
+      }
+    }
+    recalculateLevels(changed);
+    if (rootNode.count() == 0) {
+      return new RTree(rtree.leafIndex);
+    }
+    return rtree;
+  }
+
+  /**
+   * @param rtree a persistent tree that is not empty
+   * @param removals the elements to remove, with the bounds they were added with or null
+   * @return a new version without the elements, made by copying each changed node once
+   */
+  private static <T> RTree<T> removeAllPersistent(
+      RTree<T> rtree, Collection<Map.Entry<T, Rectangle>> removals) {
+    // the copy is guided by the bounds the elements are really stored with
+    Map<T, Rectangle> found = new HashMap<>();
+    for (Map.Entry<T, Rectangle> removal : removals) {
+      LeafNode<T> containingLeaf = findLeaf(rtree, removal.getKey(), removal.getValue());
+      if (containingLeaf == null) {
+        log.warn("{} is not in this tree! ", removal.getKey());
+      } else {
+        found.put(removal.getKey(), containingLeaf.getBoundsFor(removal.getKey()));
+      }
+    }
+    if (found.isEmpty()) {
+      return rtree;
+    }
+    return new RTree<>(PathCopy.removeAll(rtree.root.get(), found), true);
+  }
+
+  /**
+   * @param rtree a tree that is not persistent and not empty
+   * @param splitterContext the R*Tree or R-Tree rules for the adds that overflow a LeafNode
+   * @param additions the elements to add with their bounds
+   * @return the RTree with the elements added
+   */
+  private static <T> RTree<T> insertAll(
+      RTree<T> rtree,
+      SplitterContext<T> splitterContext,
+      Collection<Map.Entry<T, Rectangle>> additions) {
+    Node<T> rootNode = rtree.root.get();
+    // choose every LeafNode before any of them change
+    Map<LeafNode<T>, List<Map.Entry<T, Rectangle>>> byLeaf = new IdentityHashMap<>();
+    for (Map.Entry<T, Rectangle> addition : additions) {
+      Node<T> node = rootNode;
+      while (node instanceof InnerNode) {
+        node =
+            splitterContext.splitter.chooseSubtree(
+                (InnerNode<T>) node, addition.getKey(), addition.getValue());
+      }
+      byLeaf.computeIfAbsent((LeafNode<T>) node, leaf -> new ArrayList<>()).add(addition);
+    }
+    List<Map.Entry<T, Rectangle>> overflow = new ArrayList<>();
+    Set<InnerNode<T>> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Map.Entry<LeafNode<T>, List<Map.Entry<T, Rectangle>>> entry : byLeaf.entrySet()) {
+      LeafNode<T> leafNode = entry.getKey();
+      List<Map.Entry<T, Rectangle>> entries = entry.getValue();
+      int fit = Math.min(entries.size(), splitterContext.config.leafMaxEntries - leafNode.size());
+      for (Map.Entry<T, Rectangle> addition : entries.subList(0, fit)) {
+        leafNode.map.put(addition.getKey(), addition.getValue());
+        rtree.leafIndex.ifPresent(leafIndex -> leafIndex.put(addition.getKey(), leafNode));
+      }
+      overflow.addAll(entries.subList(fit, entries.size()));
+      if (fit > 0 && leafNode.getParent().isPresent()) {
+        changed.add((InnerNode<T>) leafNode.getParent().get());
+      }
+    }
+    recalculateLevels(changed);
+    log.trace("{} additions overflow their LeafNodes", overflow.size());
+    return addAll(rtree, splitterContext, overflow);
+  }
+
+  /**
+   * recalculate the bounds and count of each changed InnerNode and of every InnerNode above them,
+   * each once. Every LeafNode is at the same depth, so each level of changed InnerNodes is done
+   * before the level above it
+   *
+   * @param changed the parents of the changed LeafNodes
+   */
+  private static <T> void recalculateLevels(Set<InnerNode<T>> changed) {
+    while (!changed.isEmpty()) {
+      Set<InnerNode<T>> above = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (InnerNode<T> innerNode : changed) {
+        innerNode.recalculate();
+        innerNode.getParent().ifPresent(parentNode -> above.add((InnerNode<T>) parentNode));
+      }
+      changed = above;
+    }
+  }
+
+  /**
+   * find the LeafNode that holds an element, searching first only the nodes that contain the passed
+   * bounds, then the whole tree if the bounds are stale
+   *
+   * @param rtree the tree to search
+   * @param element the element to look for
+   * @param bounds the bounds the element was added with, or null to search the whole tree
+   * @return the LeafNode that holds the element, or null if the element is not in the tree
+   */
+  private static <T> LeafNode<T> findLeaf(RTree<T> rtree, T element, Rectangle bounds) {
+    if (rtree.leafIndex.isPresent()) {
+      return rtree.leafIndex.get().get(element);
+    }
+    if (!rtree.root.isPresent()) {
+      return null;
     }
     Node<T> rootNode = rtree.root.get();
-    Node<T> newRoot = rootNode.remove(element);
+    if (bounds != null && rootNode.getBounds().contains(bounds)) {
+      LeafNode<T> containingLeaf = rootNode.getContainingLeaf(element, bounds);
+      if (containingLeaf != null) {
+        return containingLeaf;
+      }
+    }
+    log.trace("{} is not inside {}, search the whole tree", element, bounds);
+    return rootNode.getContainingLeaf(element);
+  }
 
-    // if the newRoot is empty, return a new empty RTree, otherwise, return this
-    if (newRoot.count() == 0) {
-      return RTree.create();
+  /**
+   * remove an element before it is added again. Unlike remove with bounds, stale bounds do not
+   * leave the element where it is
+   *
+   * @param rtree the tree to remove from
+   * @param element the element to remove
+   * @param bounds the bounds the element was added with, or null to search the whole tree
+   * @return the RTree without the element
+   */
+  private static <T> RTree<T> removeFound(RTree<T> rtree, T element, Rectangle bounds) {
+    LeafNode<T> containingLeaf = findLeaf(rtree, element, bounds);
+    if (rtree.persistent) {
+      // the path copy is guided by the bounds the element is really stored with
+      return containingLeaf == null
+          ? rtree
+          : removePersistent(rtree, element, containingLeaf.getBoundsFor(element));
+    }
+    return remove(rtree, containingLeaf, element);
+  }
+
+  /**
+   * @param rtree a persistent tree
+   * @param element the element to remove
+   * @param bounds the bounds the element was added with, or null to search the whole tree
+   * @return a new version without the element, or rtree if the element was not in it
+   */
+  private static <T> RTree<T> removePersistent(RTree<T> rtree, T element, Rectangle bounds) {
+    if (!rtree.root.isPresent()) {
+      return rtree;
+    }
+    Node<T> root = PathCopy.remove(rtree.root.get(), element, bounds);
+    if (root == rtree.root.get()) {
+      log.warn("{} is not in this tree! ", element);
+      return rtree;
+    }
+    return new RTree<>(root, true);
+  }
+
+  /**
+   * remove the element from the LeafNode that holds it
+   *
+   * @param rtree the tree to remove from
+   * @param containingLeaf the LeafNode holding the element, or null if it was not found
+   * @param element the element to remove
+   * @return the RTree without the element
+   */
+  private static <T> RTree<T> remove(RTree<T> rtree, LeafNode<T> containingLeaf, T element) {
+    if (containingLeaf == null) {
+      log.warn("{} is not in this tree! ", element);
+      return rtree;
+    }
+    containingLeaf.remove(element);
+    rtree.leafIndex.ifPresent(leafIndex -> leafIndex.remove(element));
+
+    // if the root is empty, return a new empty RTree, otherwise, return this
+    if (rtree.root.get().count() == 0) {
+      return new RTree(rtree.leafIndex);
     } else {
       return rtree;
     }
   }
 
+  /**
+   * @param element the element to look for
+   * @return the LeafNode that holds the element, or null if the element is not in the tree
+   */
+  public LeafNode<T> getContainingLeaf(T element) {
+    if (leafIndex.isPresent()) {
+      return leafIndex.get().get(element);
+    }
+    if (root.isPresent()) {
+      return root.get().getContainingLeaf(element);
+    }
+    return null;
+  }
+
+  /**
+   * @param element the element to look for
+   * @return true if the element is in the tree
+   */
+  public boolean contains(T element) {
+    return getContainingLeaf(element) != null;
+  }
+
+  /**
+   * a lazy Stream of the elements whose bounds intersect with the passed shape. Nodes are only
+   * visited as the Stream is consumed, so limit or findFirst stop the search early, and a parallel
+   * Stream splits the search by subtree. The tree must not be changed while the Stream is in use
+   *
+   * @param shape the shape to search
+   * @return a Stream of each matching element and its bounds
+   */
+  public Stream<Map.Entry<T, Rectangle>> query(Rectangle shape) {
+    if (root.isEmpty()) {
+      return Stream.empty();
+    }
+    return StreamSupport.stream(new QuerySpliterator<>(root.get(), shape), false);
+  }
+
+  /**
+   * collect the elements whose bounds intersect with the passed shape, searching the subtrees in
+   * parallel on the common ForkJoinPool. The tree must not be changed while the query runs
+   *
+   * @param shape the shape to search
+   * @return the elements whose bounds intersect with the shape
+   */
+  public List<T> getVisibleElementsParallel(Rectangle shape) {
+    return getVisibleElementsParallel(
+        shape, ForkJoinPool.commonPool(), ParallelRangeQuery.DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * collect the elements whose bounds intersect with the passed shape, searching the subtrees in
+   * parallel. The tree must not be changed while the query runs
+   *
+   * @param shape the shape to search
+   * @param pool the pool to run the search on
+   * @param threshold subtrees with no more elements than this are searched without forking
+   * @return the elements whose bounds intersect with the shape
+   */
+  public List<T> getVisibleElementsParallel(Rectangle shape, ForkJoinPool pool, int threshold) {
+    if (root.isEmpty()) {
+      return new ArrayList<>();
+    }
+    return pool.invoke(new ParallelRangeQuery<>(root.get(), shape, threshold));
+  }
+
+  /**
+   * pass every pair of elements, one from each tree, whose bounds intersect to the consumer. Both
+   * trees are walked together, descending only into pairs of nodes whose bounds intersect. Neither
+   * tree may be changed while the join runs
+   *
+   * @param treeA the first tree
+   * @param treeB the second tree
+   * @param consumer gets each pair, with the element from treeA first
+   */
+  public static <T, U> void join(
+      RTree<T> treeA, RTree<U> treeB, BiConsumer<? super T, ? super U> consumer) {
+    if (treeA.root.isPresent() && treeB.root.isPresent()) {
+      SpatialJoin.join(treeA.root.get(), treeB.root.get(), consumer);
+    }
+  }
+
+  /**
+   * join two trees on the common ForkJoinPool
+   *
+   * @param treeA the first tree
+   * @param treeB the second tree
+   * @param consumer gets each pair, with the element from treeA first. It is called from many
+   *     threads at once
+   */
+  public static <T, U> void joinParallel(
+      RTree<T> treeA, RTree<U> treeB, BiConsumer<? super T, ? super U> consumer) {
+    joinParallel(treeA, treeB, consumer, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * join two trees with a task for each pair of intersecting children of the roots. Neither tree
+   * may be changed while the join runs
+   *
+   * @param treeA the first tree
+   * @param treeB the second tree
+   * @param consumer gets each pair, with the element from treeA first. It is called from many
+   *     threads at once
+   * @param pool the pool to run the join on
+   */
+  public static <T, U> void joinParallel(
+      RTree<T> treeA,
+      RTree<U> treeB,
+      BiConsumer<? super T, ? super U> consumer,
+      ForkJoinPool pool) {
+    if (treeA.root.isPresent() && treeB.root.isPresent()) {
+      SpatialJoin.joinParallel(treeA.root.get(), treeB.root.get(), consumer, pool);
+    }
+  }
+
+  /**
+   * pass every pair of elements in this tree whose bounds intersect to the consumer. Each unordered
+   * pair is passed once, in no particular order, and pairs are passed as they are found so they are
+   * never all held at once. The tree must not be changed while the join runs
+   *
+   * @param consumer gets each intersecting pair
+   */
+  public void selfJoin(BiConsumer<? super T, ? super T> consumer) {
+    if (root.isPresent()) {
+      SpatialJoin.selfJoin(root.get(), consumer);
+    }
+  }
+
+  /**
+   * make a read-only snapshot of this tree, packed into arrays for queries that stay in cache. The
+   * snapshot does not see later changes to the tree
+   *
+   * @return the snapshot
+   */
+  public FrozenRTree<T> freeze() {
+    return FrozenRTree.of(root.orElse(null));
+  }
+
+  /**
+   * make a read-only snapshot of this tree, with the corners of the bounds stored at the passed
+   * precision
+   *
+   * @param precision Precision.FLOAT halves the memory for the bounds, rounding them outward
+   * @return the snapshot
+   */
+  public FrozenRTree<T> freeze(Precision precision) {
+    return FrozenRTree.of(root.orElse(null), precision);
+  }
+
+  /**
+   * visit the elements whose bounds intersect with the passed shape, without collecting them
+   *
+   * @param shape the shape to search
+   * @param visitor called with each element and its bounds. Returning false stops the search
+   * @return false if the visitor stopped the search, true otherwise
+   */
+  public boolean visitVisibleElements(Rectangle shape, ElementVisitor<T> visitor) {
+    return root.isEmpty() || root.get().visitVisibleElements(shape, visitor);
+  }
+
+  /**
+   * visit the elements whose bounds contain the passed Point, without collecting them
+   *
+   * @param p the Point to search for
+   * @param visitor called with each element and its bounds. Returning false stops the search
+   * @return false if the visitor stopped the search, true otherwise
+   */
+  public boolean visitContainingElements(Point p, ElementVisitor<T> visitor) {
+    return root.isEmpty() || root.get().visitContainingElements(p.x, p.y, visitor);
+  }
+
+  /**
+   * find the k elements nearest to a Point, searching best-first so that only the nodes that could
+   * hold one of them are visited
+   *
+   * @param p the Point to measure from
+   * @param k the most elements to return
+   * @return up to k elements in ascending order of the distance from p to their bounds
+   */
+  public List<T> nearest(Point p, int k) {
+    return nearest(p, k, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * find the k elements nearest to a Point that are no farther than maxDistance from it
+   *
+   * @param p the Point to measure from
+   * @param k the most elements to return
+   * @param maxDistance the farthest an element's bounds may be from p
+   * @return up to k elements in ascending order of the distance from p to their bounds
+   */
+  public List<T> nearest(Point p, int k, double maxDistance) {
+    if (root.isPresent()) {
+      return NearestNeighbors.search(root.get(), p, k, maxDistance);
+    }
+    return new ArrayList<>();
+  }
+
   /**
    * return an object at point p
    *
@@ -325,7 +1106,8 @@ public class RTree<T> {
   }
 
   /**
-   * count all the elements in the R-Tree
+   * count all the elements in the R-Tree. Each node keeps the count of its subtree, so this does
+   * not visit any nodes
    *
    * @return the count
    */
@@ -338,6 +1120,20 @@ public class RTree<T> {
     return count;
   }
 
+  /**
+   * count the elements whose bounds intersect with the passed shape, without collecting them.
+   * Subtrees that are entirely inside the shape are counted without being visited
+   *
+   * @param shape the shape to count elements in
+   * @return the number of elements that Node.getVisibleElements would collect for the shape
+   */
+  public int countIn(Rectangle shape) {
+    if (root.isPresent()) {
+      return root.get().countIn(shape);
+    }
+    return 0;
+  }
+
   private String asString() {
     if (root.isPresent()) {
       return root.get().asString("");
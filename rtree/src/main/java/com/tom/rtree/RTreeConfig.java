@@ -0,0 +1,94 @@
+package com.tom.rtree;
+
+/**
+ * the maximum and minimum number of entries held by the nodes of an R-Tree. LeafNodes and
+ * InnerNodes are configured separately. A node is split rather than hold more than its maximum, and
+ * a split never leaves a node with fewer than its minimum
+ *
+ * @author Tom Nelson
+ */
+public class RTreeConfig {
+
+  /** Node.M entries per node and Node.m (40% of Node.M) minimum, for leaves and inner nodes */
+  public static final RTreeConfig DEFAULT = of(Node.M);
+
+  /** the most elements a LeafNode can hold */
+  public final int leafMaxEntries;
+  /** the fewest elements a LeafNode is left with after a split */
+  public final int leafMinEntries;
+  /** the most child nodes an InnerNode can hold */
+  public final int innerMaxEntries;
+  /** the fewest child nodes an InnerNode is left with after a split */
+  public final int innerMinEntries;
+
+  /**
+   * @param maxEntries the most entries for both leaves and inner nodes
+   * @return a config where the minimum entries are 40% of the maximum
+   */
+  public static RTreeConfig of(int maxEntries) {
+    return of(maxEntries, maxEntries);
+  }
+
+  /**
+   * @param leafMaxEntries the most elements in a LeafNode
+   * @param innerMaxEntries the most child nodes in an InnerNode
+   * @return a config where the minimum entries are 40% of the maximum
+   */
+  public static RTreeConfig of(int leafMaxEntries, int innerMaxEntries) {
+    return of(leafMaxEntries, minFor(leafMaxEntries), innerMaxEntries, minFor(innerMaxEntries));
+  }
+
+  /**
+   * @param leafMaxEntries the most elements in a LeafNode
+   * @param leafMinEntries the fewest elements in a LeafNode after a split
+   * @param innerMaxEntries the most child nodes in an InnerNode
+   * @param innerMinEntries the fewest child nodes in an InnerNode after a split
+   * @return the new config
+   */
+  public static RTreeConfig of(
+      int leafMaxEntries, int leafMinEntries, int innerMaxEntries, int innerMinEntries) {
+    return new RTreeConfig(leafMaxEntries, leafMinEntries, innerMaxEntries, innerMinEntries);
+  }
+
+  private RTreeConfig(
+      int leafMaxEntries, int leafMinEntries, int innerMaxEntries, int innerMinEntries) {
+    check(leafMaxEntries, leafMinEntries);
+    check(innerMaxEntries, innerMinEntries);
+    this.leafMaxEntries = leafMaxEntries;
+    this.leafMinEntries = leafMinEntries;
+    this.innerMaxEntries = innerMaxEntries;
+    this.innerMinEntries = innerMinEntries;
+  }
+
+  /**
+   * 40% of maxEntries, rounded, but at least 2 when a split can leave 2 in each half. With a
+   * minimum of 1 the R*-Tree splitters keep choosing 1 against maxEntries splits at small fan-outs
+   * and the tree grows one level per few inserts
+   */
+  private static int minFor(int maxEntries) {
+    return Math.min((maxEntries + 1) / 2, Math.max(2, (int) Math.round(maxEntries * .4)));
+  }
+
+  /** a split of maxEntries + 1 entries must be able to leave both halves with minEntries */
+  private static void check(int maxEntries, int minEntries) {
+    if (maxEntries < 2)
+      throw new IllegalArgumentException("maxEntries must be at least 2 but was " + maxEntries);
+    if (minEntries < 1 || minEntries > (maxEntries + 1) / 2)
+      throw new IllegalArgumentException(
+          "minEntries must be between 1 and (maxEntries + 1) / 2 but was " + minEntries);
+  }
+
+  @Override
+  public String toString() {
+    return "RTreeConfig{"
+        + "leafMaxEntries="
+        + leafMaxEntries
+        + ", leafMinEntries="
+        + leafMinEntries
+        + ", innerMaxEntries="
+        + innerMaxEntries
+        + ", innerMinEntries="
+        + innerMinEntries
+        + '}';
+  }
+}
@@ -1,6 +1,7 @@
 package com.tom.rtree;
 
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * contains the parent for Node implementations
@@ -12,6 +13,9 @@ public abstract class RTreeNode<T> implements Node<T> {
 
   protected Optional<Node<T>> parent = Optional.empty();
 
+  /** the latch for LatchedRTree, created the first time it is asked for */
+  private volatile ReentrantReadWriteLock latch;
+
   public void setParent(Node<T> node) {
     parent = Optional.of(node);
   }
@@ -19,4 +23,29 @@ public abstract class RTreeNode<T> implements Node<T> {
   public Optional<Node<T>> getParent() {
     return parent;
   }
+
+  // the corners of getBounds(), read without creating a Rectangle. Used on the insert path
+
+  abstract double minX();
+
+  abstract double minY();
+
+  abstract double maxX();
+
+  abstract double maxY();
+
+  /** @return the latch that guards this node in a LatchedRTree */
+  ReentrantReadWriteLock latch() {
+    ReentrantReadWriteLock latch = this.latch;
+    if (latch == null) {
+      synchronized (this) {
+        latch = this.latch;
+        if (latch == null) {
+          latch = new ReentrantReadWriteLock();
+          this.latch = latch;
+        }
+      }
+    }
+    return latch;
+  }
 }
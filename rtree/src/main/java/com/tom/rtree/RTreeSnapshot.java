@@ -0,0 +1,125 @@
+package com.tom.rtree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a binary format for an RTree that is read back into exactly the same structure, with no splits.
+ *
+ * <p>After a header of MAGIC, VERSION and the element count, the nodes are written in pre-order. An
+ * InnerNode is written as INNER and its child count, followed by its children. A LeafNode is
+ * written as LEAF and its entry count, followed by the x, y, maxX and maxY of each entry and the
+ * element, written by the ElementCodec. The corners are read back exactly. The bounds of the nodes
+ * are not written. They are the unions of the entries below them, so they are made again, exactly,
+ * as the nodes are created.
+ *
+ * @author Tom Nelson
+ */
+public class RTreeSnapshot {
+
+  private static final Logger log = LoggerFactory.getLogger(RTreeSnapshot.class);
+
+  static final int MAGIC = 0x52545245; // "RTRE"
+  static final int VERSION = 1;
+
+  static final byte LEAF = 0;
+  static final byte INNER = 1;
+
+  private RTreeSnapshot() {}
+
+  /**
+   * @param rtree the tree to write
+   * @param codec writes each element
+   * @param out where to write the tree
+   * @param <T> the type of element stored in the RTree
+   * @throws IOException if out can not be written
+   */
+  public static <T> void write(RTree<T> rtree, ElementCodec<T> codec, DataOutput out)
+      throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(rtree.count());
+    if (rtree.getRoot().isPresent()) {
+      writeNode(rtree.getRoot().get(), codec, out);
+    }
+    log.trace("wrote {} elements", rtree.count());
+  }
+
+  private static <T> void writeNode(Node<T> node, ElementCodec<T> codec, DataOutput out)
+      throws IOException {
+    if (node instanceof LeafNode) {
+      out.writeByte(LEAF);
+      out.writeInt(node.size());
+      for (Map.Entry<T, Rectangle> entry : ((LeafNode<T>) node).map.entrySet()) {
+        Rectangle r = entry.getValue();
+        out.writeDouble(r.x);
+        out.writeDouble(r.y);
+        out.writeDouble(r.maxX);
+        out.writeDouble(r.maxY);
+        codec.write(entry.getKey(), out);
+      }
+    } else {
+      List<Node<T>> children = ((InnerNode<T>) node).getChildren();
+      out.writeByte(INNER);
+      out.writeInt(children.size());
+      for (Node<T> child : children) {
+        writeNode(child, codec, out);
+      }
+    }
+  }
+
+  /**
+   * @param in where to read the tree from
+   * @param codec reads each element
+   * @param <T> the type of element stored in the RTree
+   * @return an RTree with the same structure as the one that was written
+   * @throws IOException if in can not be read or does not hold an RTree
+   */
+  public static <T> RTree<T> read(DataInput in, ElementCodec<T> codec) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("not an RTree snapshot");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("unsupported RTree snapshot version " + version);
+    }
+    int count = in.readInt();
+    if (count == 0) {
+      return RTree.create();
+    }
+    Node<T> root = readNode(in, codec);
+    if (root.count() != count) {
+      throw new IOException("expected " + count + " elements but read " + root.count());
+    }
+    log.trace("read {} elements", count);
+    return RTree.create(root);
+  }
+
+  private static <T> Node<T> readNode(DataInput in, ElementCodec<T> codec) throws IOException {
+    byte type = in.readByte();
+    int size = in.readInt();
+    if (type == LEAF) {
+      List<Map.Entry<T, Rectangle>> entries = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        Rectangle r =
+            Rectangle.fromCorners(
+                in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+        entries.add(Map.entry(codec.read(in), r));
+      }
+      return LeafNode.create(entries);
+    } else if (type == INNER) {
+      List<Node<T>> children = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        children.add(readNode(in, codec));
+      }
+      return InnerNode.create(children);
+    }
+    throw new IOException("unknown node type " + type);
+  }
+}
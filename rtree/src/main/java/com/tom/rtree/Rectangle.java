@@ -55,6 +55,38 @@ public class Rectangle {
     return new Rectangle(min.x, min.y, max.x - min.x, max.y - min.y);
   }
 
+  /**
+   * unlike of(x, y, width, height), the max corner is kept exactly as passed rather than computed
+   * from the width and height, so the union of Rectangles contains each of them exactly
+   *
+   * @param minX left most x location
+   * @param minY top most y location
+   * @param maxX right most x location
+   * @param maxY bottom most y location
+   * @return a new Rectangle with the passed corners
+   */
+  public static Rectangle fromCorners(double minX, double minY, double maxX, double maxY) {
+    return new Rectangle(minX, minY, maxX, maxY, true);
+  }
+
+  /**
+   * @param minX left most x location
+   * @param minY top most y location
+   * @param maxX right most x location
+   * @param maxY bottom most y location
+   * @param corners distinguishes this constructor from the one that takes width and height
+   */
+  private Rectangle(double minX, double minY, double maxX, double maxY, boolean corners) {
+    if (maxX < minX || maxY < minY)
+      throw new IllegalArgumentException("width and height must be non-negative");
+    this.x = minX;
+    this.y = minY;
+    this.width = maxX - minX;
+    this.height = maxY - minY;
+    this.maxX = maxX;
+    this.maxY = maxY;
+  }
+
   /**
    * @param x left most x location
    * @param y top most y location
@@ -110,6 +142,14 @@ public class Rectangle {
     return contains(p.x, p.y);
   }
 
+  /**
+   * @param other another Rectangle to test
+   * @return true if the other Rectangle is entirely inside (or on the edges of) this Rectangle
+   */
+  public boolean contains(Rectangle other) {
+    return other.x >= x && other.maxX <= maxX && other.y >= y && other.maxY <= maxY;
+  }
+
   public Point min() {
     return Point.of(x, y);
   }
@@ -156,7 +196,7 @@ public class Rectangle {
     double x2 = Math.max(maxX, newX);
     double y1 = Math.min(y, newY);
     double y2 = Math.max(maxY, newY);
-    return new Rectangle(x1, y1, x2 - x1, y2 - y1);
+    return fromCorners(x1, y1, x2, y2);
   }
 
   /**
@@ -170,7 +210,7 @@ public class Rectangle {
     double minY = Math.min(this.y, other.y);
     double maxX = Math.max(this.maxX, other.maxX);
     double maxY = Math.max(this.maxY, other.maxY);
-    return Rectangle.of(minX, minY, maxX - minX, maxY - minY);
+    return fromCorners(minX, minY, maxX, maxY);
   }
 
   public Dimension getSize() {
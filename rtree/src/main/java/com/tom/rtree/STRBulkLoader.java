@@ -0,0 +1,96 @@
+package com.tom.rtree;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sort-Tile-Recursive packing of entries into a complete R-Tree.
+ *
+ * <p>The entries are sorted by the x coordinate of their centers and cut into vertical slices. Each
+ * slice is sorted by the y coordinate of the centers and cut into runs of full LeafNodes. The
+ * LeafNodes are then packed the same way into InnerNodes, one level at a time, until only the root
+ * remains. No splitter is ever called.
+ *
+ * <p>Based on STR: A Simple and Efficient Algorithm for R-Tree Packing, Scott T. Leutenegger, Mario
+ * A. Lopez, Jeffrey Edgington
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public class STRBulkLoader<T> implements BulkLoader<T> {
+
+  private static final Logger log = LoggerFactory.getLogger(STRBulkLoader.class);
+
+  private final HorizontalCenterNodeComparator<T> horizontalCenterComparator =
+      new HorizontalCenterNodeComparator<>();
+  private final VerticalCenterNodeComparator<T> verticalCenterComparator =
+      new VerticalCenterNodeComparator<>();
+
+  private final Comparator<Node<T>> horizontalCenterNodeComparator =
+      (left, right) -> horizontalCenterComparator.compare(left.getBounds(), right.getBounds());
+  private final Comparator<Node<T>> verticalCenterNodeComparator =
+      (left, right) -> verticalCenterComparator.compare(left.getBounds(), right.getBounds());
+
+  @Override
+  public Node<T> load(SplitterContext<T> splitterContext, List<Map.Entry<T, Rectangle>> entries) {
+    RTreeConfig config = splitterContext.config;
+    List<Node<T>> level = new ArrayList<>();
+    for (List<Map.Entry<T, Rectangle>> run :
+        tile(
+            entries, config.leafMaxEntries, horizontalCenterComparator, verticalCenterComparator)) {
+      level.add(LeafNode.create(run));
+    }
+    log.trace("packed {} entries into {} LeafNodes", entries.size(), level.size());
+    while (level.size() > 1) {
+      List<Node<T>> parents = new ArrayList<>();
+      for (List<Node<T>> run :
+          tile(
+              level,
+              config.innerMaxEntries,
+              horizontalCenterNodeComparator,
+              verticalCenterNodeComparator)) {
+        parents.add(InnerNode.create(run));
+      }
+      log.trace("packed {} nodes into {} InnerNodes", level.size(), parents.size());
+      level = parents;
+    }
+    return level.get(0);
+  }
+
+  /**
+   * sort the items by x, cut them into vertical slices, then sort each slice by y and cut it into
+   * runs of at most capacity items
+   *
+   * @param items the items to tile. This list is sorted in place
+   * @param capacity the maximum number of items in a run
+   * @param xComparator orders items along the x-axis
+   * @param yComparator orders items along the y-axis
+   * @param <B> the type of item to tile
+   * @return the runs of items, each of which will become one node
+   */
+  static <B> List<List<B>> tile(
+      List<B> items,
+      int capacity,
+      Comparator<? super B> xComparator,
+      Comparator<? super B> yComparator) {
+    int size = items.size();
+    int nodeCount = (size + capacity - 1) / capacity;
+    int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+    int sliceSize = sliceCount * capacity;
+
+    items.sort(xComparator);
+    List<List<B>> runs = new ArrayList<>(nodeCount);
+    for (int sliceStart = 0; sliceStart < size; sliceStart += sliceSize) {
+      List<B> slice = items.subList(sliceStart, Math.min(sliceStart + sliceSize, size));
+      slice.sort(yComparator);
+      for (int runStart = 0; runStart < slice.size(); runStart += capacity) {
+        runs.add(slice.subList(runStart, Math.min(runStart + capacity, slice.size())));
+      }
+    }
+    return runs;
+  }
+}
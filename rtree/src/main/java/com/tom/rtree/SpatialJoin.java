@@ -0,0 +1,260 @@
+package com.tom.rtree;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+
+/**
+ * a spatial join of two R-Trees by synchronized traversal. Both trees are walked together and a
+ * pair of nodes is only descended into when their bounds intersect. Below a pair, only the children
+ * that reach into the intersection of the pair's bounds are looked at, since nothing outside of it
+ * can meet anything in the other node. The entries of a pair of leaves are matched by a plane
+ * sweep.
+ *
+ * <p>The trees must not be changed while the join runs.
+ *
+ * @author Tom Nelson
+ */
+class SpatialJoin {
+
+  /** orders entries by the left edges of their bounds */
+  private static final Comparator<Map.Entry<?, Rectangle>> BY_MIN_X =
+      Comparator.comparingDouble(entry -> entry.getValue().x);
+
+  private SpatialJoin() {}
+
+  /**
+   * pass every pair of elements, one from each subtree, whose bounds intersect to the consumer
+   *
+   * @param a the root of the first tree
+   * @param b the root of the second tree
+   * @param consumer gets each intersecting pair
+   */
+  static <T, U> void join(Node<T> a, Node<U> b, BiConsumer<? super T, ? super U> consumer) {
+    Rectangle boundsA = a.getBounds();
+    Rectangle boundsB = b.getBounds();
+    if (boundsA.intersects(boundsB)) {
+      join(
+          a,
+          b,
+          Math.max(boundsA.x, boundsB.x),
+          Math.max(boundsA.y, boundsB.y),
+          Math.min(boundsA.maxX, boundsB.maxX),
+          Math.min(boundsA.maxY, boundsB.maxY),
+          consumer);
+    }
+  }
+
+  /** the nodes intersect, and the window is the intersection of their bounds */
+  private static <T, U> void join(
+      Node<T> a,
+      Node<U> b,
+      double minX,
+      double minY,
+      double maxX,
+      double maxY,
+      BiConsumer<? super T, ? super U> consumer) {
+    if (a instanceof LeafNode && b instanceof LeafNode) {
+      joinLeaves((LeafNode<T>) a, (LeafNode<U>) b, minX, minY, maxX, maxY, consumer);
+    } else if (a instanceof LeafNode) {
+      InnerNode<U> innerB = (InnerNode<U>) b;
+      for (int j = 0; j < innerB.size(); j++) {
+        Node<U> childB = innerB.get(j);
+        if (intersects(childB.getBounds(), minX, minY, maxX, maxY)) {
+          join(a, childB, consumer);
+        }
+      }
+    } else if (b instanceof LeafNode) {
+      InnerNode<T> innerA = (InnerNode<T>) a;
+      for (int i = 0; i < innerA.size(); i++) {
+        Node<T> childA = innerA.get(i);
+        if (intersects(childA.getBounds(), minX, minY, maxX, maxY)) {
+          join(childA, b, consumer);
+        }
+      }
+    } else {
+      InnerNode<T> innerA = (InnerNode<T>) a;
+      InnerNode<U> innerB = (InnerNode<U>) b;
+      // the children of b that reach into the window, found once for all children of a
+      List<Node<U>> candidates = new ArrayList<>(innerB.size());
+      for (int j = 0; j < innerB.size(); j++) {
+        Node<U> childB = innerB.get(j);
+        if (intersects(childB.getBounds(), minX, minY, maxX, maxY)) {
+          candidates.add(childB);
+        }
+      }
+      for (int i = 0; i < innerA.size(); i++) {
+        Node<T> childA = innerA.get(i);
+        if (intersects(childA.getBounds(), minX, minY, maxX, maxY)) {
+          for (Node<U> childB : candidates) {
+            join(childA, childB, consumer);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * a plane sweep over the entries of both leaves that reach into the window, in order of their
+   * left edges. Each entry is only compared with the entries of the other leaf that start before it
+   * ends
+   */
+  private static <T, U> void joinLeaves(
+      LeafNode<T> a,
+      LeafNode<U> b,
+      double minX,
+      double minY,
+      double maxX,
+      double maxY,
+      BiConsumer<? super T, ? super U> consumer) {
+    List<Map.Entry<U, Rectangle>> entriesB = inWindow(b, minX, minY, maxX, maxY);
+    if (entriesB.isEmpty()) {
+      return;
+    }
+    List<Map.Entry<T, Rectangle>> entriesA = inWindow(a, minX, minY, maxX, maxY);
+    int i = 0;
+    int j = 0;
+    while (i < entriesA.size() && j < entriesB.size()) {
+      Map.Entry<T, Rectangle> entryA = entriesA.get(i);
+      Map.Entry<U, Rectangle> entryB = entriesB.get(j);
+      Rectangle boundsA = entryA.getValue();
+      Rectangle boundsB = entryB.getValue();
+      if (boundsA.x <= boundsB.x) {
+        for (int k = j; k < entriesB.size(); k++) {
+          Map.Entry<U, Rectangle> other = entriesB.get(k);
+          if (other.getValue().x > boundsA.maxX) {
+            break;
+          }
+          if (overlapsInY(boundsA, other.getValue())) {
+            consumer.accept(entryA.getKey(), other.getKey());
+          }
+        }
+        i++;
+      } else {
+        for (int k = i; k < entriesA.size(); k++) {
+          Map.Entry<T, Rectangle> other = entriesA.get(k);
+          if (other.getValue().x > boundsB.maxX) {
+            break;
+          }
+          if (overlapsInY(other.getValue(), boundsB)) {
+            consumer.accept(other.getKey(), entryB.getKey());
+          }
+        }
+        j++;
+      }
+    }
+  }
+
+  /** @return the entries of the leaf that reach into the window, by their left edges */
+  private static <T> List<Map.Entry<T, Rectangle>> inWindow(
+      LeafNode<T> leafNode, double minX, double minY, double maxX, double maxY) {
+    List<Map.Entry<T, Rectangle>> entries = new ArrayList<>(leafNode.size());
+    for (Map.Entry<T, Rectangle> entry : leafNode.map.entrySet()) {
+      if (intersects(entry.getValue(), minX, minY, maxX, maxY)) {
+        entries.add(entry);
+      }
+    }
+    entries.sort(BY_MIN_X);
+    return entries;
+  }
+
+  /** the rectangles are already known to overlap in x */
+  private static boolean overlapsInY(Rectangle a, Rectangle b) {
+    return a.maxY >= b.y && b.maxY >= a.y;
+  }
+
+  /**
+   * pass every unordered pair of elements in the subtree whose bounds intersect to the consumer,
+   * once. A pair in one leaf is found by a plane sweep of that leaf. Any other pair has a lowest
+   * common InnerNode, and is found by joining the two children of it that hold the pair, so no pair
+   * can be found twice
+   *
+   * @param node the root of the subtree
+   * @param consumer gets each intersecting pair
+   */
+  static <T> void selfJoin(Node<T> node, BiConsumer<? super T, ? super T> consumer) {
+    if (node instanceof LeafNode) {
+      sweep((LeafNode<T>) node, consumer);
+      return;
+    }
+    InnerNode<T> innerNode = (InnerNode<T>) node;
+    int size = innerNode.size();
+    for (int i = 0; i < size; i++) {
+      Node<T> child = innerNode.get(i);
+      selfJoin(child, consumer);
+      for (int j = i + 1; j < size; j++) {
+        join(child, innerNode.get(j), consumer);
+      }
+    }
+  }
+
+  /** a plane sweep of the entries of one leaf against each other */
+  private static <T> void sweep(LeafNode<T> leafNode, BiConsumer<? super T, ? super T> consumer) {
+    List<Map.Entry<T, Rectangle>> entries = new ArrayList<>(leafNode.map.entrySet());
+    entries.sort(BY_MIN_X);
+    for (int i = 0; i < entries.size(); i++) {
+      Map.Entry<T, Rectangle> entry = entries.get(i);
+      Rectangle bounds = entry.getValue();
+      for (int k = i + 1; k < entries.size(); k++) {
+        Map.Entry<T, Rectangle> other = entries.get(k);
+        if (other.getValue().x > bounds.maxX) {
+          break;
+        }
+        if (overlapsInY(bounds, other.getValue())) {
+          consumer.accept(entry.getKey(), other.getKey());
+        }
+      }
+    }
+  }
+
+  private static boolean intersects(
+      Rectangle r, double minX, double minY, double maxX, double maxY) {
+    return r.maxX >= minX && maxX >= r.x && r.maxY >= minY && maxY >= r.y;
+  }
+
+  /**
+   * join on a ForkJoinPool, with one task for each pair of intersecting children of the two roots.
+   * The consumer is called from the threads of the pool, so it must be thread safe
+   *
+   * @param a the root of the first tree
+   * @param b the root of the second tree
+   * @param consumer gets each intersecting pair
+   * @param pool the pool to run the tasks on
+   */
+  static <T, U> void joinParallel(
+      Node<T> a, Node<U> b, BiConsumer<? super T, ? super U> consumer, ForkJoinPool pool) {
+    if (!a.getBounds().intersects(b.getBounds())) {
+      return;
+    }
+    List<Node<T>> topA = top(a, b.getBounds());
+    List<Node<U>> topB = top(b, a.getBounds());
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (Node<T> nodeA : topA) {
+      for (Node<U> nodeB : topB) {
+        if (nodeA.getBounds().intersects(nodeB.getBounds())) {
+          tasks.add(ForkJoinTask.adapt(() -> join(nodeA, nodeB, consumer)));
+        }
+      }
+    }
+    pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+  }
+
+  /** @return the children of node that intersect with the window, or node itself if it is a leaf */
+  private static <T> List<Node<T>> top(Node<T> node, Rectangle window) {
+    List<Node<T>> top = new ArrayList<>();
+    if (node instanceof LeafNode) {
+      top.add(node);
+    } else {
+      for (Node<T> child : ((InnerNode<T>) node).getChildren()) {
+        if (child.getBounds().intersects(window)) {
+          top.add(child);
+        }
+      }
+    }
+    return top;
+  }
+}
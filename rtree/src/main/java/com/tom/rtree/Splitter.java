@@ -1,7 +1,6 @@
 package com.tom.rtree;
 
 import java.util.List;
-import java.util.Optional;
 
 /**
  * interface for classes that hold semantics for R-Tree and R*-Tree
@@ -11,7 +10,19 @@ import java.util.Optional;
  */
 public interface Splitter<T> {
 
-  Pair<InnerNode<T>> split(List<Node<T>> children, Node<T> newEntry);
+  /**
+   * @param config the fan-out of the tree. The split nodes hold at least config.innerMinEntries
+   * @param children the children of the full InnerNode
+   * @param newEntry the child that did not fit
+   * @return two new InnerNodes that share the children and the new child
+   */
+  Pair<InnerNode<T>> split(RTreeConfig config, List<Node<T>> children, Node<T> newEntry);
 
-  Optional<Node<T>> chooseSubtree(InnerNode<T> nodeToSplit, T element, Rectangle bounds);
+  /**
+   * @param nodeToSplit the node to descend from
+   * @param element the element to add
+   * @param bounds the bounds of the element to add
+   * @return the child of nodeToSplit to add the element to, or nodeToSplit if it has no children
+   */
+  Node<T> chooseSubtree(InnerNode<T> nodeToSplit, T element, Rectangle bounds);
 }
@@ -1,7 +1,9 @@
 package com.tom.rtree;
 
+import java.util.Optional;
+
 /**
- * a container for the functions that support R-Tree and R*-Tree
+ * a container for the functions that support R-Tree and R*-Tree, and the fan-out of the nodes
  *
  * @param <T> the type of element in the RTree
  * @author Tom Nelson
@@ -10,13 +12,36 @@ public class SplitterContext<T> {
 
   public final LeafSplitter<T> leafSplitter;
   public final Splitter<T> splitter;
+  public final RTreeConfig config;
+
+  /** the element to LeafNode index of an indexed RTree. Set by the RTree, never by callers */
+  final Optional<LeafIndex<T>> leafIndex;
 
   public static <T> SplitterContext<T> of(LeafSplitter<T> leafSplitter, Splitter<T> splitter) {
-    return new SplitterContext<>(leafSplitter, splitter);
+    return new SplitterContext<>(leafSplitter, splitter, RTreeConfig.DEFAULT, Optional.empty());
+  }
+
+  public static <T> SplitterContext<T> of(
+      LeafSplitter<T> leafSplitter, Splitter<T> splitter, RTreeConfig config) {
+    return new SplitterContext<>(leafSplitter, splitter, config, Optional.empty());
   }
 
-  private SplitterContext(LeafSplitter<T> leafSplitter, Splitter<T> splitter) {
+  private SplitterContext(
+      LeafSplitter<T> leafSplitter,
+      Splitter<T> splitter,
+      RTreeConfig config,
+      Optional<LeafIndex<T>> leafIndex) {
     this.leafSplitter = leafSplitter;
     this.splitter = splitter;
+    this.config = config;
+    this.leafIndex = leafIndex;
+  }
+
+  /**
+   * @param leafIndex the index to keep up to date
+   * @return a SplitterContext with the same rules as this one
+   */
+  SplitterContext<T> withLeafIndex(Optional<LeafIndex<T>> leafIndex) {
+    return new SplitterContext<>(leafSplitter, splitter, config, leafIndex);
   }
 }
@@ -0,0 +1,176 @@
+package com.tom.rtree;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * a thread safe RTree for read mostly use. The current version is a persistent RTree held in an
+ * AtomicReference. A writer builds the next version off to the side, by path copying or by bulk
+ * loading a batch, and publishes it with one reference swap. Readers load the current version and
+ * query it with no lock and no retry, however long a batch takes to build.
+ *
+ * <p>Writers take turns, so that no work is thrown away by a lost race.
+ *
+ * @author Tom Nelson
+ * @param <T> the type of element stored in the RTree
+ */
+public class VersionedRTree<T> {
+
+  private static final Logger log = LoggerFactory.getLogger(VersionedRTree.class);
+
+  private final AtomicReference<RTree<T>> current;
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final SplitterContext<T> splitterContext;
+  private volatile long version;
+
+  /**
+   * @param splitterContext the R*Tree or R-Tree rules for the changes
+   * @return an empty, thread safe R-Tree
+   */
+  public static <T> VersionedRTree<T> create(SplitterContext<T> splitterContext) {
+    return new VersionedRTree<>(RTree.createPersistent(), splitterContext);
+  }
+
+  /**
+   * @param rtree the first version. It must be persistent
+   * @param splitterContext the R*Tree or R-Tree rules for the changes
+   * @return a thread safe R-Tree
+   */
+  public static <T> VersionedRTree<T> of(RTree<T> rtree, SplitterContext<T> splitterContext) {
+    if (!rtree.isPersistent()) {
+      throw new IllegalArgumentException("the versions of a VersionedRTree must be persistent");
+    }
+    return new VersionedRTree<>(rtree, splitterContext);
+  }
+
+  private VersionedRTree(RTree<T> rtree, SplitterContext<T> splitterContext) {
+    this.current = new AtomicReference<>(rtree);
+    this.splitterContext = splitterContext;
+  }
+
+  /**
+   * @return the current version. It never changes, so any number of queries against it see the same
+   *     elements
+   */
+  public RTree<T> snapshot() {
+    return current.get();
+  }
+
+  /** @return how many versions have been published */
+  public long getVersion() {
+    return version;
+  }
+
+  public void add(T element, Rectangle bounds) {
+    apply(tree -> RTree.add(tree, splitterContext, element, bounds));
+  }
+
+  /**
+   * add a batch with one path copy per entry. Only the version with every entry is published
+   *
+   * @param entries the elements and their bounds
+   */
+  public void addAll(Collection<Map.Entry<T, Rectangle>> entries) {
+    apply(tree -> RTree.addAll(tree, splitterContext, entries));
+  }
+
+  /**
+   * repack the current elements and the batch into a new version. For batches that are large next
+   * to the tree
+   *
+   * @param entries the elements and their bounds
+   */
+  public void bulkAdd(Collection<Map.Entry<T, Rectangle>> entries) {
+    apply(tree -> RTree.bulkAdd(tree, splitterContext, entries));
+  }
+
+  public void remove(T element) {
+    apply(tree -> RTree.remove(tree, element));
+  }
+
+  public void remove(T element, Rectangle bounds) {
+    apply(tree -> RTree.remove(tree, element, bounds));
+  }
+
+  public void update(T element, Rectangle oldBounds, Rectangle newBounds) {
+    apply(tree -> RTree.update(tree, splitterContext, element, oldBounds, newBounds));
+  }
+
+  /**
+   * build the next version from the current one and publish it
+   *
+   * @param change makes the next version. It must not change the version it is given
+   */
+  public void apply(UnaryOperator<RTree<T>> change) {
+    writeLock.lock();
+    try {
+      RTree<T> tree = current.get();
+      RTree<T> next = change.apply(tree);
+      if (next != tree) {
+        if (!next.isPersistent()) {
+          throw new IllegalStateException("the versions of a VersionedRTree must be persistent");
+        }
+        current.set(next);
+        version++;
+        log.trace("published version {}", version);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * @param p point to search
+   * @return an element that contains p or null
+   */
+  public T getPickedObject(Point p) {
+    RTree<T> tree = current.get();
+    return tree.getRoot().isPresent() ? tree.getPickedObject(p) : null;
+  }
+
+  /**
+   * @param shape a shape to filter the elements
+   * @return the elements whose bounds intersect with the passed shape
+   */
+  public Set<T> getVisibleElements(Rectangle shape) {
+    RTree<T> tree = current.get();
+    return tree.getRoot().isPresent()
+        ? tree.getRoot().get().getVisibleElements(new HashSet<>(), shape)
+        : new HashSet<>();
+  }
+
+  /**
+   * @param p the Point to measure from
+   * @param k the most elements to return
+   * @return up to k elements in ascending order of the distance from p to their bounds
+   */
+  public List<T> nearest(Point p, int k) {
+    return current.get().nearest(p, k);
+  }
+
+  /**
+   * @param shape the shape to count elements in
+   * @return the number of elements whose bounds intersect with the passed shape
+   */
+  public int countIn(Rectangle shape) {
+    return current.get().countIn(shape);
+  }
+
+  /** @return the number of elements in the tree */
+  public int count() {
+    return current.get().count();
+  }
+
+  @Override
+  public String toString() {
+    return "VersionedRTree{" + "version=" + version + ", count=" + count() + '}';
+  }
+}
@@ -0,0 +1,34 @@
+package com.tom.rtree;
+
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * A comparator to compare along the y-axis, Nodes where the values are Rectangle are compared with
+ * the center y values
+ *
+ * @author Tom Nelson
+ * @param <T>
+ */
+public class VerticalCenterNodeComparator<T> implements Comparator<Map.Entry<T, Rectangle>> {
+
+  /**
+   * Compares its two arguments for order. Returns a negative integer, zero, or a positive integer
+   * as the first argument is less than, equal to, or greater than the second.
+   *
+   * @param left the first object to be compared.
+   * @param right the second object to be compared.
+   * @return a negative integer, zero, or a positive integer as the first argument is less than,
+   *     equal to, or greater than the second.
+   */
+  public int compare(Rectangle left, Rectangle right) {
+    if (left.getCenterY() == right.getCenterY()) return 0;
+    if (left.getCenterY() < right.getCenterY()) return -1;
+    return 1;
+  }
+
+  @Override
+  public int compare(Map.Entry<T, Rectangle> leftNode, Map.Entry<T, Rectangle> rightNode) {
+    return compare(leftNode.getValue(), rightNode.getValue());
+  }
+}
@@ -0,0 +1,210 @@
+package com.tom.rtree;
+
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** @author Tom Nelson */
+public class BulkLoaderTest {
+
+  private static final Logger log = LoggerFactory.getLogger(BulkLoaderTest.class);
+
+  SplitterContext<String> splitterContext =
+      SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+  List<Map.Entry<String, Rectangle>> entries = new ArrayList<>();
+
+  @Before
+  public void before() {
+    Random generator = new Random(1001);
+    for (int i = 0; i < 5000; i++) {
+      double x = generator.nextDouble() * 1000;
+      double y = generator.nextDouble() * 1000;
+      entries.add(new AbstractMap.SimpleEntry<>("N" + i, Rectangle.of(x, y, 10, 10)));
+    }
+  }
+
+  @Test
+  public void testSTRBulkAdd() {
+    RTree<String> rTree = RTree.bulkAdd(RTree.create(), splitterContext, entries);
+    testTree(rTree, entries);
+  }
+
+  @Test
+  public void testHilbertBulkAdd() {
+    RTree<String> rTree =
+        RTree.bulkAdd(RTree.create(), splitterContext, new HilbertBulkLoader<>(), entries);
+    testTree(rTree, entries);
+  }
+
+  @Test
+  public void testOMTBulkAdd() {
+    RTree<String> rTree =
+        RTree.bulkAdd(RTree.create(), splitterContext, new OMTBulkLoader<>(), entries);
+    testTree(rTree, entries);
+    // 5000 entries need a tree of height 4, so the root holds 5 subtrees of up to 1000
+    Assert.assertEquals(5, rTree.getRoot().get().size());
+  }
+
+  @Test
+  public void testConfiguredFanOut() {
+    RTreeConfig config = RTreeConfig.of(32, 16);
+    SplitterContext<String> wideContext =
+        SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>(), config);
+    RTree<String> rTree = RTree.create();
+    for (Map.Entry<String, Rectangle> entry : entries) {
+      rTree = RTree.add(rTree, wideContext, entry);
+    }
+    testTree(rTree, config, entries);
+    testMinimumFill(rTree.getRoot().get(), config);
+
+    for (BulkLoader<String> bulkLoader :
+        List.<BulkLoader<String>>of(
+            new STRBulkLoader<>(), new HilbertBulkLoader<>(), new OMTBulkLoader<>())) {
+      rTree = RTree.bulkAdd(RTree.create(), wideContext, bulkLoader, entries);
+      testTree(rTree, config, entries);
+    }
+
+    SplitterContext<String> quadraticContext =
+        SplitterContext.of(new QuadraticLeafSplitter<>(), new QuadraticSplitter<>(), config);
+    rTree = RTree.create();
+    for (Map.Entry<String, Rectangle> entry : entries) {
+      rTree = RTree.add(rTree, quadraticContext, entry);
+    }
+    testTree(rTree, config, entries);
+    testMinimumFill(rTree.getRoot().get(), config);
+  }
+
+  @Test
+  public void testSmallFanOut() {
+    Random generator = new Random(1002);
+    List<Map.Entry<String, Rectangle>> manyEntries = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      double x = generator.nextDouble() * 1000;
+      double y = generator.nextDouble() * 1000;
+      manyEntries.add(new AbstractMap.SimpleEntry<>("N" + i, Rectangle.of(x, y, 2, 2)));
+    }
+    for (int maxEntries : new int[] {3, 4, 5}) {
+      RTreeConfig config = RTreeConfig.of(maxEntries);
+      Assert.assertTrue(config.innerMinEntries >= 2);
+      for (SplitterContext<String> context :
+          List.<SplitterContext<String>>of(
+              SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>(), config),
+              SplitterContext.of(
+                  new QuadraticLeafSplitter<>(), new QuadraticSplitter<>(), config))) {
+        RTree<String> rTree = RTree.create();
+        for (Map.Entry<String, Rectangle> entry : manyEntries) {
+          rTree = RTree.add(rTree, context, entry);
+        }
+        testTree(rTree, config, manyEntries);
+        testMinimumFill(rTree.getRoot().get(), config);
+        // with every inner node holding at least 2 children the height is at most log2 of the
+        // number of leaves
+        Assert.assertTrue(height(rTree.getRoot().get()) <= 15);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testConfigRejectsUnsplittableMinimum() {
+    RTreeConfig.of(10, 6, 10, 4);
+  }
+
+  @Test
+  public void testBulkAddKeepsExistingElements() {
+    RTree<String> rTree = RTree.create();
+    for (Map.Entry<String, Rectangle> entry : entries.subList(0, 100)) {
+      rTree = RTree.add(rTree, splitterContext, entry);
+    }
+    rTree = RTree.bulkAdd(rTree, splitterContext, entries.subList(100, entries.size()));
+    testTree(rTree, entries);
+  }
+
+  @Test
+  public void testBulkAddFewEntries() {
+    RTree<String> rTree = RTree.bulkAdd(RTree.create(), splitterContext, entries.subList(0, 3));
+    Assert.assertTrue(rTree.getRoot().get() instanceof LeafNode);
+    testTree(rTree, entries.subList(0, 3));
+    rTree = RTree.bulkAdd(RTree.create(), splitterContext, Collections.emptyList());
+    Assert.assertFalse(rTree.getRoot().isPresent());
+  }
+
+  @Test
+  public void testAddAfterBulkAdd() {
+    RTree<String> rTree = RTree.bulkAdd(RTree.create(), splitterContext, entries.subList(0, 1000));
+    for (Map.Entry<String, Rectangle> entry : entries.subList(1000, entries.size())) {
+      rTree = RTree.add(rTree, splitterContext, entry);
+    }
+    testTree(rTree, entries);
+  }
+
+  /**
+   * the tree holds all the entries, every leaf is at the same depth, no node is over full and the
+   * bounds of every InnerNode are the union of its children
+   */
+  static void testTree(RTree<String> rTree, List<Map.Entry<String, Rectangle>> entries) {
+    testTree(rTree, RTreeConfig.DEFAULT, entries);
+  }
+
+  static void testTree(
+      RTree<String> rTree, RTreeConfig config, List<Map.Entry<String, Rectangle>> entries) {
+    Assert.assertEquals(entries.size(), rTree.count());
+    Node<String> root = rTree.getRoot().get();
+    Assert.assertFalse(root.getParent().isPresent());
+    Set<Integer> leafDepths = new HashSet<>();
+    testNode(root, config, 0, leafDepths);
+    Assert.assertEquals(1, leafDepths.size());
+    for (Map.Entry<String, Rectangle> entry : entries) {
+      Set<String> visible =
+          rTree.getRoot().get().getVisibleElements(new HashSet<>(), entry.getValue());
+      Assert.assertTrue(visible.contains(entry.getKey()));
+    }
+  }
+
+  private static void testNode(
+      Node<String> node, RTreeConfig config, int depth, Set<Integer> leafDepths) {
+    Assert.assertTrue(node.size() > 0);
+    if (node instanceof LeafNode) {
+      Assert.assertTrue(node.size() <= config.leafMaxEntries);
+      leafDepths.add(depth);
+    } else {
+      Assert.assertTrue(node.size() <= config.innerMaxEntries);
+      InnerNode<String> innerNode = (InnerNode<String>) node;
+      Rectangle unionBounds = Node.union(innerNode.getChildren());
+      Rectangle bounds = innerNode.getBounds();
+      Assert.assertEquals(unionBounds.x, bounds.x, 1.0E-3);
+      Assert.assertEquals(unionBounds.y, bounds.y, 1.0E-3);
+      Assert.assertEquals(unionBounds.maxX, bounds.maxX, 1.0E-3);
+      Assert.assertEquals(unionBounds.maxY, bounds.maxY, 1.0E-3);
+      for (Node<String> kid : innerNode.getChildren()) {
+        Assert.assertSame(node, kid.getParent().get());
+        testNode(kid, config, depth + 1, leafDepths);
+      }
+    }
+  }
+
+  /** @return the number of levels from the root down to the leaves */
+  private static int height(Node<String> node) {
+    int height = 1;
+    while (node instanceof InnerNode) {
+      node = ((InnerNode<String>) node).getChildren().get(0);
+      height++;
+    }
+    return height;
+  }
+
+  /** every node below the root that was made by a split holds at least the minimum entries */
+  private static void testMinimumFill(Node<String> root, RTreeConfig config) {
+    for (TreeNode kid : root.getChildren()) {
+      Node<String> node = (Node<String>) kid;
+      if (node instanceof LeafNode) {
+        Assert.assertTrue(node.size() >= config.leafMinEntries);
+      } else {
+        Assert.assertTrue(node.size() >= config.innerMinEntries);
+        testMinimumFill(node, config);
+      }
+    }
+  }
+}
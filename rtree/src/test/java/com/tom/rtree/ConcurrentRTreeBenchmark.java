@@ -0,0 +1,83 @@
+package com.tom.rtree;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * measures the query throughput of a ConcurrentRTree with many reader threads, first alone and then
+ * while one writer adds entries at a fixed rate. It is not a test, so run its main method from the
+ * test classpath
+ */
+public class ConcurrentRTreeBenchmark {
+
+  static final int READERS = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+  static final int SIZE = 200_000;
+  static final int WRITES_PER_SECOND = 5_000;
+  static final long MILLIS = 5_000;
+
+  public static void main(String[] args) throws Exception {
+    SplitterContext<String> splitterContext =
+        SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+    ConcurrentRTree<String> tree = ConcurrentRTree.create(splitterContext);
+    Random generator = new Random(1);
+    for (int i = 0; i < SIZE; i++) {
+      tree.add("N" + i, randomRectangle(generator));
+    }
+    System.out.printf("%d readers, %d entries%n", READERS, SIZE);
+    System.out.printf("readers alone: %,d queries/s%n", run(tree, 0));
+    System.out.printf(
+        "with %,d writes/s: %,d queries/s%n", WRITES_PER_SECOND, run(tree, WRITES_PER_SECOND));
+    System.out.println(tree);
+  }
+
+  private static Rectangle randomRectangle(Random generator) {
+    return Rectangle.of(generator.nextDouble() * 10000, generator.nextDouble() * 10000, 10, 10);
+  }
+
+  /** @return the queries per second of all the readers together */
+  private static long run(ConcurrentRTree<String> tree, int writesPerSecond) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+    AtomicBoolean running = new AtomicBoolean(true);
+    LongAdder queries = new LongAdder();
+    for (int r = 0; r < READERS; r++) {
+      int seed = r;
+      executor.execute(
+          () -> {
+            Random random = new Random(seed);
+            while (running.get()) {
+              tree.getVisibleElements(
+                  Rectangle.of(random.nextDouble() * 9900, random.nextDouble() * 9900, 100, 100));
+              queries.increment();
+            }
+          });
+    }
+    if (writesPerSecond > 0) {
+      executor.submit(
+          () -> {
+            Random random = new Random(-1);
+            long interval = TimeUnit.SECONDS.toNanos(1) / writesPerSecond;
+            long next = System.nanoTime();
+            int i = 0;
+            while (running.get()) {
+              String element = "W" + i++;
+              tree.add(element, randomRectangle(random));
+              next += interval;
+              long wait = next - System.nanoTime();
+              if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+              }
+            }
+            return null;
+          });
+    }
+    Thread.sleep(MILLIS);
+    running.set(false);
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+    return queries.sum() * 1000 / MILLIS;
+  }
+}
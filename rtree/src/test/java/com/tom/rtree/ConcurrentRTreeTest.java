@@ -0,0 +1,139 @@
+package com.tom.rtree;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentRTreeTest {
+
+  SplitterContext<String> splitterContext =
+      SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+
+  @Test
+  public void testReadersAndWriter() throws Exception {
+    ConcurrentRTree<String> tree = ConcurrentRTree.create(splitterContext);
+    Map<String, Rectangle> shapes = new ConcurrentHashMap<>();
+    Random generator = new Random(1501);
+    for (int i = 0; i < 10000; i++) {
+      shapes.put(
+          "N" + i,
+          Rectangle.of(generator.nextDouble() * 1000, generator.nextDouble() * 1000, 10, 10));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(5);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    List<Future<?>> readers = new ArrayList<>();
+    for (int r = 0; r < 4; r++) {
+      int seed = r;
+      readers.add(
+          executor.submit(
+              () -> {
+                Random random = new Random(seed);
+                while (writing.get()) {
+                  Rectangle window =
+                      Rectangle.of(random.nextDouble() * 900, random.nextDouble() * 900, 100, 100);
+                  for (String element : tree.getVisibleElements(window)) {
+                    Assert.assertTrue(window.intersects(shapes.get(element)));
+                  }
+                  String picked = tree.getPickedObject(Point.of(500, 500));
+                  Assert.assertTrue(picked == null || shapes.get(picked).contains(500, 500));
+                  Assert.assertTrue(tree.nearest(Point.of(500, 500), 5).size() <= 5);
+                }
+                return null;
+              }));
+    }
+    Future<?> writer =
+        executor.submit(
+            () -> {
+              for (int i = 0; i < 10000; i++) {
+                tree.add("N" + i, shapes.get("N" + i));
+              }
+              for (int i = 0; i < 10000; i += 2) {
+                tree.remove("N" + i, shapes.get("N" + i));
+              }
+              return null;
+            });
+    try {
+      writer.get(60, TimeUnit.SECONDS);
+    } finally {
+      writing.set(false);
+    }
+    for (Future<?> reader : readers) {
+      reader.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+    Assert.assertEquals(5000, tree.count());
+    Assert.assertEquals(5000, tree.getVisibleElements(Rectangle.of(-10, -10, 1100, 1100)).size());
+    Assert.assertTrue(tree.getOptimisticReads() > 0);
+  }
+
+  @Test
+  public void testCachedBoundsMatchCorners() throws Exception {
+    // an indexed tree, so the nodes can be found from an element when the writing is done
+    RTree<String> indexed = RTree.createIndexed();
+    ConcurrentRTree<String> tree = ConcurrentRTree.of(indexed, splitterContext);
+    ExecutorService executor = Executors.newFixedThreadPool(5);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    List<Future<?>> readers = new ArrayList<>();
+    for (int r = 0; r < 4; r++) {
+      int seed = r;
+      readers.add(
+          executor.submit(
+              () -> {
+                Random random = new Random(seed);
+                while (writing.get()) {
+                  // every query asks each node it passes for its bounds
+                  tree.countIn(
+                      Rectangle.of(random.nextDouble() * 1000, random.nextDouble() * 1000, 50, 50));
+                  tree.getPickedObject(
+                      Point.of(random.nextDouble() * 1000, random.nextDouble() * 1000));
+                }
+                return null;
+              }));
+    }
+    Future<?> writer =
+        executor.submit(
+            () -> {
+              // small shapes that drift outward, so most adds enlarge the nodes they pass
+              Random random = new Random(1502);
+              for (int i = 0; i < 20000; i++) {
+                double reach = 10 + i / 20.0;
+                tree.add(
+                    "N" + i,
+                    Rectangle.of(random.nextDouble() * reach, random.nextDouble() * reach, 2, 2));
+              }
+              return null;
+            });
+    try {
+      writer.get(60, TimeUnit.SECONDS);
+    } finally {
+      writing.set(false);
+    }
+    for (Future<?> reader : readers) {
+      reader.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+    Node<String> root = indexed.getContainingLeaf("N0");
+    while (root.getParent().isPresent()) {
+      root = root.getParent().get();
+    }
+    Assert.assertEquals(20000, root.count());
+    assertBoundsMatchCorners(root);
+    Assert.assertEquals(20000, tree.countIn(root.getBounds()));
+  }
+
+  private static void assertBoundsMatchCorners(Node<String> node) {
+    Rectangle bounds = node.getBounds();
+    RTreeNode<String> corners = (RTreeNode<String>) node;
+    Assert.assertEquals(corners.minX(), bounds.x, 0);
+    Assert.assertEquals(corners.minY(), bounds.y, 0);
+    Assert.assertEquals(corners.maxX(), bounds.maxX, 0);
+    Assert.assertEquals(corners.maxY(), bounds.maxY, 0);
+    if (node instanceof InnerNode) {
+      for (Node<String> child : ((InnerNode<String>) node).getChildren()) {
+        assertBoundsMatchCorners(child);
+      }
+    }
+  }
+}
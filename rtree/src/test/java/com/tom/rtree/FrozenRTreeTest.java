@@ -0,0 +1,163 @@
+package com.tom.rtree;
+
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrozenRTreeTest {
+
+  SplitterContext<String> splitterContext =
+      SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+  RTree<String> rTree = RTree.create();
+  Map<String, Rectangle> shapes = new HashMap<>();
+  int width = 1000;
+  int height = 1000;
+
+  @Before
+  public void setup() {
+    Random generator = new Random(1101);
+    for (int i = 0; i < 5000; i++) {
+      Rectangle r =
+          Rectangle.of(
+              generator.nextDouble() * width,
+              generator.nextDouble() * height,
+              generator.nextDouble() * 20,
+              generator.nextDouble() * 20);
+      shapes.put("N" + i, r);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+  }
+
+  @Test
+  public void testQueries() {
+    FrozenRTree<String> frozen = rTree.freeze();
+    Assert.assertEquals(rTree.count(), frozen.count());
+    Assert.assertEquals(rTree.getRoot().get().getBounds(), frozen.getBounds());
+
+    Random generator = new Random(1102);
+    for (int i = 0; i < 100; i++) {
+      Rectangle window =
+          Rectangle.of(
+              generator.nextDouble() * width,
+              generator.nextDouble() * height,
+              generator.nextDouble() * 200,
+              generator.nextDouble() * 200);
+      List<String> visible = frozen.getVisibleElements(window);
+      Assert.assertEquals(
+          rTree.getRoot().get().getVisibleElements(new HashSet<>(), window),
+          new HashSet<>(visible));
+      Assert.assertEquals(new HashSet<>(visible).size(), visible.size());
+
+      Point p = Point.of(generator.nextDouble() * width, generator.nextDouble() * height);
+      String picked = frozen.getPickedObject(p);
+      if (rTree.getPickedObject(p) == null) {
+        Assert.assertNull(picked);
+      } else {
+        Assert.assertTrue(shapes.get(picked).contains(p));
+      }
+
+      List<String> expected = rTree.nearest(p, 20);
+      List<String> nearest = frozen.nearest(p, 20);
+      Assert.assertEquals(expected.size(), nearest.size());
+      for (int j = 0; j < nearest.size(); j++) {
+        Assert.assertEquals(
+            Circle.squaredDistance(p, shapes.get(expected.get(j))),
+            Circle.squaredDistance(p, shapes.get(nearest.get(j))),
+            0);
+      }
+      Assert.assertEquals(rTree.nearest(p, 20, 15).size(), frozen.nearest(p, 20, 15).size());
+    }
+  }
+
+  @Test
+  public void testFloatPrecision() {
+    // coordinates far from the origin, where floats are coarse
+    RTree<String> farTree = RTree.create();
+    Map<String, Rectangle> farShapes = new HashMap<>();
+    for (Map.Entry<String, Rectangle> entry : shapes.entrySet()) {
+      Rectangle r = entry.getValue().offset(1.0e6 + 0.1, 3.0e6 + 0.3);
+      farShapes.put(entry.getKey(), r);
+      farTree = RTree.add(farTree, splitterContext, entry.getKey(), r);
+    }
+    FrozenRTree<String> frozen = farTree.freeze(Precision.FLOAT);
+    Assert.assertEquals(Precision.FLOAT, frozen.getPrecision());
+    Assert.assertEquals(Precision.DOUBLE, farTree.freeze().getPrecision());
+    Assert.assertEquals(farTree.count(), frozen.count());
+    Assert.assertTrue(frozen.getBounds().contains(farTree.getRoot().get().getBounds()));
+
+    // every stored box contains the real one
+    frozen.visitVisibleElements(
+        frozen.getBounds(),
+        (element, bounds) -> {
+          Assert.assertTrue(bounds.contains(farShapes.get(element)));
+          Assert.assertTrue(bounds.width - farShapes.get(element).width < 0.5);
+          return true;
+        });
+
+    Random generator = new Random(1103);
+    for (int i = 0; i < 100; i++) {
+      Rectangle window =
+          Rectangle.of(
+              1.0e6 + generator.nextDouble() * width,
+              3.0e6 + generator.nextDouble() * height,
+              generator.nextDouble() * 200,
+              generator.nextDouble() * 200);
+      Set<String> visible = new HashSet<>(frozen.getVisibleElements(window));
+      // nothing is missed, and anything extra is within rounding of the window
+      Assert.assertTrue(
+          visible.containsAll(farTree.getRoot().get().getVisibleElements(new HashSet<>(), window)));
+      Rectangle grown =
+          Rectangle.fromCorners(window.x - 1, window.y - 1, window.maxX + 1, window.maxY + 1);
+      for (String element : visible) {
+        Assert.assertTrue(grown.intersects(farShapes.get(element)));
+      }
+    }
+    Assert.assertEquals(Float.MAX_VALUE, BoxArray.Floats.down(1.0e300), 0);
+    Assert.assertEquals(Float.POSITIVE_INFINITY, BoxArray.Floats.up(1.0e300), 0);
+    Assert.assertTrue(BoxArray.Floats.down(0.1) <= 0.1);
+    Assert.assertTrue(BoxArray.Floats.up(0.1) >= 0.1);
+  }
+
+  @Test
+  public void testSnapshotIsUnchangedByTree() {
+    FrozenRTree<String> frozen = rTree.freeze();
+    for (int i = 0; i < 1000; i++) {
+      rTree = RTree.remove(rTree, "N" + i);
+    }
+    Assert.assertEquals(5000, frozen.count());
+    Assert.assertEquals(5000, frozen.getVisibleElements(frozen.getBounds()).size());
+  }
+
+  @Test
+  public void testVisitorStops() {
+    FrozenRTree<String> frozen = rTree.freeze();
+    List<String> firstTen = new ArrayList<>();
+    Assert.assertFalse(
+        frozen.visitVisibleElements(
+            frozen.getBounds(),
+            (element, bounds) -> {
+              assertSameCorners(shapes.get(element), bounds);
+              firstTen.add(element);
+              return firstTen.size() < 10;
+            }));
+    Assert.assertEquals(10, firstTen.size());
+  }
+
+  /** the snapshot keeps the corners, so width and height may differ in the last bit */
+  static void assertSameCorners(Rectangle expected, Rectangle actual) {
+    Assert.assertEquals(expected.x, actual.x, 0);
+    Assert.assertEquals(expected.y, actual.y, 0);
+    Assert.assertEquals(expected.maxX, actual.maxX, 0);
+    Assert.assertEquals(expected.maxY, actual.maxY, 0);
+  }
+
+  @Test
+  public void testEmpty() {
+    FrozenRTree<String> frozen = RTree.<String>create().freeze();
+    Assert.assertEquals(0, frozen.count());
+    Assert.assertNull(frozen.getPickedObject(Point.ORIGIN));
+    Assert.assertTrue(frozen.getVisibleElements(Rectangle.of(0, 0, 10, 10)).isEmpty());
+    Assert.assertTrue(frozen.nearest(Point.ORIGIN, 3).isEmpty());
+  }
+}
@@ -0,0 +1,70 @@
+package com.tom.rtree;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * measures the bytes allocated by each insert into a mutable RTree, using the allocation counter of
+ * the current thread. The Rectangles and names of the new elements are made before each insert, so
+ * only the work of the insert is counted. It is not a test, so run its main method from the test
+ * classpath
+ */
+public class InsertAllocationBenchmark {
+
+  static final int SIZE = 200_000;
+  static final int MEASURED = 100_000;
+
+  public static void main(String[] args) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    for (String name : new String[] {"R*-Tree", "R-Tree"}) {
+      SplitterContext<String> splitterContext =
+          name.equals("R-Tree")
+              ? SplitterContext.of(new QuadraticLeafSplitter<>(), new QuadraticSplitter<>())
+              : SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+      Random generator = new Random(1);
+      RTree<String> rtree = RTree.create();
+      for (int i = 0; i < SIZE; i++) {
+        rtree = RTree.add(rtree, splitterContext, "N" + i, randomRectangle(generator));
+      }
+      // what it costs to ask for the counter
+      long overhead = threads.getThreadAllocatedBytes(thread);
+      overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+      long[] bytes = new long[MEASURED];
+      for (int i = 0; i < MEASURED; i++) {
+        String element = "M" + i;
+        Rectangle bounds = randomRectangle(generator);
+        long before = threads.getThreadAllocatedBytes(thread);
+        rtree = RTree.add(rtree, splitterContext, element, bounds);
+        bytes[i] = threads.getThreadAllocatedBytes(thread) - before - overhead;
+      }
+      report(name, bytes);
+    }
+  }
+
+  private static Rectangle randomRectangle(Random generator) {
+    return Rectangle.of(generator.nextDouble() * 10000, generator.nextDouble() * 10000, 10, 10);
+  }
+
+  private static void report(String name, long[] bytes) {
+    long total = 0;
+    for (long b : bytes) {
+      total += b;
+    }
+    long[] sorted = bytes.clone();
+    Arrays.sort(sorted);
+    // most inserts do not split, so the median is the cost of a plain insert
+    System.out.printf(
+        "%s: %,d inserts, mean %,d bytes, median %,d bytes, 99th percentile %,d bytes,"
+            + " max %,d bytes%n",
+        name,
+        bytes.length,
+        total / bytes.length,
+        sorted[sorted.length / 2],
+        sorted[sorted.length * 99 / 100],
+        sorted[sorted.length - 1]);
+  }
+}
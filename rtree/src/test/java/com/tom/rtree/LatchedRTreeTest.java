@@ -0,0 +1,113 @@
+package com.tom.rtree;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatchedRTreeTest {
+
+  SplitterContext<String> splitterContext =
+      SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+
+  @Test
+  public void testProducersAndReaders() throws Exception {
+    LatchedRTree<String> tree = LatchedRTree.create(splitterContext);
+    Map<String, Rectangle> shapes = new ConcurrentHashMap<>();
+    Random generator = new Random(1701);
+    int producerCount = 4;
+    int perProducer = 5000;
+    for (int i = 0; i < producerCount * perProducer; i++) {
+      shapes.put(
+          "N" + i,
+          Rectangle.of(generator.nextDouble() * 1000, generator.nextDouble() * 1000, 10, 10));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(producerCount + 2);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    List<Future<?>> readers = new ArrayList<>();
+    for (int r = 0; r < 2; r++) {
+      int seed = r;
+      readers.add(
+          executor.submit(
+              () -> {
+                Random random = new Random(seed);
+                while (writing.get()) {
+                  Rectangle window =
+                      Rectangle.of(random.nextDouble() * 900, random.nextDouble() * 900, 100, 100);
+                  for (String element : tree.getVisibleElements(window)) {
+                    Assert.assertTrue(window.intersects(shapes.get(element)));
+                  }
+                  String picked = tree.getPickedObject(Point.of(500, 500));
+                  Assert.assertTrue(picked == null || shapes.get(picked).contains(500, 500));
+                }
+                return null;
+              }));
+    }
+    List<Future<?>> producers = new ArrayList<>();
+    for (int p = 0; p < producerCount; p++) {
+      int first = p * perProducer;
+      producers.add(
+          executor.submit(
+              () -> {
+                for (int i = first; i < first + perProducer; i++) {
+                  tree.add("N" + i, shapes.get("N" + i));
+                }
+                return null;
+              }));
+    }
+    try {
+      for (Future<?> producer : producers) {
+        producer.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      writing.set(false);
+    }
+    for (Future<?> reader : readers) {
+      reader.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    Assert.assertEquals(shapes.size(), tree.count());
+    Assert.assertEquals(
+        shapes.keySet(), tree.getVisibleElements(Rectangle.of(-10, -10, 1100, 1100)));
+    Node<String> root = tree.toRTree().getRoot().get();
+    Assert.assertFalse(root.getParent().isPresent());
+    assertConsistent(root);
+    for (Map.Entry<String, Rectangle> entry : shapes.entrySet()) {
+      Assert.assertTrue(tree.getVisibleElements(entry.getValue()).contains(entry.getKey()));
+    }
+
+    for (int i = 0; i < shapes.size(); i += 2) {
+      tree.remove("N" + i, shapes.get("N" + i));
+    }
+    Assert.assertEquals(shapes.size() / 2, tree.count());
+    assertConsistent(tree.toRTree().getRoot().get());
+  }
+
+  @Test
+  public void testEmpty() {
+    LatchedRTree<String> tree = LatchedRTree.create(splitterContext);
+    Assert.assertEquals(0, tree.count());
+    Assert.assertNull(tree.getPickedObject(Point.of(1, 1)));
+    Assert.assertTrue(tree.getVisibleElements(Rectangle.of(0, 0, 10, 10)).isEmpty());
+    tree.add("A", Rectangle.of(1, 1, 2, 2));
+    Assert.assertEquals("A", tree.getPickedObject(Point.of(2, 2)));
+    tree.remove("A");
+    Assert.assertEquals(0, tree.count());
+  }
+
+  /** every InnerNode contains the bounds of its children, and counts the elements below it */
+  private static void assertConsistent(Node<String> node) {
+    if (node instanceof InnerNode) {
+      int count = 0;
+      for (Node<String> child : ((InnerNode<String>) node).getChildren()) {
+        Assert.assertSame(node, child.getParent().get());
+        Assert.assertTrue(node.getBounds().contains(child.getBounds()));
+        assertConsistent(child);
+        count += child.count();
+      }
+      Assert.assertEquals(count, node.count());
+    }
+  }
+}
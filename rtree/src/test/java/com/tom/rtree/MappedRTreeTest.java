@@ -0,0 +1,85 @@
+package com.tom.rtree;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedRTreeTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  SplitterContext<String> splitterContext =
+      SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+  RTree<String> rTree = RTree.create();
+
+  @Test
+  public void testQueries() throws IOException {
+    Random generator = new Random(1301);
+    for (int i = 0; i < 5000; i++) {
+      Rectangle r =
+          Rectangle.of(
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * 20,
+              generator.nextDouble() * 20);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+    FrozenRTree<String> frozen = rTree.freeze();
+    Path path = folder.newFile("index.rmap").toPath();
+    MappedRTree.write(frozen, ElementCodec.STRING, path);
+    Assert.assertTrue(Files.size(path) > MappedRTree.PAGE_SIZE);
+    MappedRTree<String> mapped = MappedRTree.open(path, ElementCodec.STRING);
+
+    Assert.assertEquals(frozen.count(), mapped.count());
+    Assert.assertEquals(frozen.getBounds(), mapped.getBounds());
+    for (int i = 0; i < 100; i++) {
+      Rectangle window =
+          Rectangle.of(
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * 200,
+              generator.nextDouble() * 200);
+      Assert.assertEquals(frozen.getVisibleElements(window), mapped.getVisibleElements(window));
+      Point p = Point.of(generator.nextDouble() * 1000, generator.nextDouble() * 1000);
+      Assert.assertEquals(frozen.getPickedObject(p), mapped.getPickedObject(p));
+      Assert.assertEquals(frozen.nearest(p, 10), mapped.nearest(p, 10));
+      Assert.assertEquals(frozen.nearest(p, 10, 12), mapped.nearest(p, 10, 12));
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    Path path = folder.newFile("empty.rmap").toPath();
+    MappedRTree.write(rTree, ElementCodec.STRING, path);
+    MappedRTree<String> mapped = MappedRTree.open(path, ElementCodec.STRING);
+    Assert.assertEquals(0, mapped.count());
+    Assert.assertNull(mapped.getPickedObject(Point.ORIGIN));
+    Assert.assertTrue(mapped.getVisibleElements(Rectangle.of(0, 0, 10, 10)).isEmpty());
+    Assert.assertTrue(mapped.nearest(Point.ORIGIN, 4).isEmpty());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testClosed() throws IOException {
+    rTree = RTree.add(rTree, splitterContext, "one", Rectangle.of(1, 2, 3, 4));
+    Path path = folder.newFile("closed.rmap").toPath();
+    MappedRTree.write(rTree, ElementCodec.STRING, path);
+    MappedRTree<String> mapped;
+    try (MappedRTree<String> open = MappedRTree.open(path, ElementCodec.STRING)) {
+      Assert.assertEquals("one", open.getPickedObject(Point.of(2, 3)));
+      mapped = open;
+    }
+    mapped.getVisibleElements(Rectangle.of(0, 0, 10, 10));
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotAMappedFile() throws IOException {
+    Path path = folder.newFile("other").toPath();
+    Files.write(path, new byte[MappedRTree.PAGE_SIZE]);
+    MappedRTree.open(path, ElementCodec.STRING);
+  }
+}
@@ -0,0 +1,125 @@
+package com.tom.rtree;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PagedRTreeTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  SplitterContext<String> splitterContext =
+      SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+
+  @Test
+  public void testLru() throws IOException {
+    testAddQueryReopen(EvictionPolicy.LRU);
+  }
+
+  @Test
+  public void testClock() throws IOException {
+    testAddQueryReopen(EvictionPolicy.CLOCK);
+  }
+
+  private void testAddQueryReopen(EvictionPolicy policy) throws IOException {
+    Path path = folder.newFile().toPath();
+    RTree<String> rTree = RTree.create();
+    Random generator = new Random(1401);
+    try (PagedRTree<String> paged =
+        PagedRTree.create(path, ElementCodec.STRING, splitterContext, 1024, 16, policy)) {
+      for (int i = 0; i < 5000; i++) {
+        Rectangle r =
+            Rectangle.of(generator.nextDouble() * 1000, generator.nextDouble() * 1000, 10, 10);
+        rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+        paged.add("N" + i, r);
+      }
+      Assert.assertEquals(5000, paged.count());
+      Assert.assertEquals(rTree.getRoot().get().getBounds(), paged.getBounds());
+      assertSameQueries(rTree, paged);
+      // the pool is much smaller than the tree, so pages were evicted and written back
+      Assert.assertTrue(paged.pageCount() > 16);
+      Assert.assertTrue(paged.getHits() > 0);
+      Assert.assertTrue(paged.getMisses() > 0);
+      Assert.assertTrue(paged.getWrites() > 0);
+    }
+    try (PagedRTree<String> paged =
+        PagedRTree.open(path, ElementCodec.STRING, splitterContext, 4, policy)) {
+      Assert.assertEquals(5000, paged.count());
+      assertSameQueries(rTree, paged);
+      paged.add("more", Rectangle.of(500, 500, 10, 10));
+      Assert.assertTrue(paged.getVisibleElements(Rectangle.of(505, 505, 1, 1)).contains("more"));
+    }
+  }
+
+  @Test
+  public void testSameShapeAsInMemory() throws IOException {
+    // entries on a grid often tie on enlargement and area, so the fewest children decides where
+    // they go. The entry counts on the inner pages let the paged tree make the same choices
+    SplitterContext<String> quadraticContext =
+        SplitterContext.of(new QuadraticLeafSplitter<>(), new QuadraticSplitter<>());
+    RTree<String> rTree = RTree.create();
+    Random generator = new Random(1403);
+    try (PagedRTree<String> paged =
+        PagedRTree.create(
+            folder.newFile().toPath(),
+            ElementCodec.STRING,
+            quadraticContext,
+            1024,
+            16,
+            EvictionPolicy.LRU)) {
+      for (int i = 0; i < 5000; i++) {
+        Rectangle r = Rectangle.of(generator.nextInt(40) * 10, generator.nextInt(40) * 10, 10, 10);
+        rTree = RTree.add(rTree, quadraticContext, "N" + i, r);
+        paged.add("N" + i, r);
+      }
+      // one page per node, and the header
+      Assert.assertEquals(nodeCount(rTree.getRoot().get()) + 1, paged.pageCount());
+      assertSameQueries(rTree, paged);
+    }
+  }
+
+  private static int nodeCount(TreeNode node) {
+    int count = 1;
+    for (TreeNode kid : node.getChildren()) {
+      count += nodeCount(kid);
+    }
+    return count;
+  }
+
+  private void assertSameQueries(RTree<String> rTree, PagedRTree<String> paged) throws IOException {
+    Random generator = new Random(1402);
+    for (int i = 0; i < 50; i++) {
+      Rectangle window =
+          Rectangle.of(
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * 200,
+              generator.nextDouble() * 200);
+      List<String> visible = paged.getVisibleElements(window);
+      Assert.assertEquals(new HashSet<>(visible).size(), visible.size());
+      Assert.assertEquals(
+          rTree.getRoot().get().getVisibleElements(new HashSet<>(), window),
+          new HashSet<>(visible));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNodeBiggerThanPage() throws IOException {
+    try (PagedRTree<String> paged =
+        PagedRTree.create(
+            folder.newFile().toPath(),
+            ElementCodec.STRING,
+            splitterContext,
+            128,
+            4,
+            EvictionPolicy.LRU)) {
+      for (int i = 0; i < 10; i++) {
+        paged.add("N" + i, Rectangle.of(i, i, 1, 1));
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.tom.rtree;
+
+import java.io.*;
+import java.util.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RTreeSnapshotTest {
+
+  SplitterContext<String> splitterContext =
+      SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+  RTree<String> rTree = RTree.create();
+
+  @Test
+  public void testWriteRead() throws IOException {
+    Random generator = new Random(1201);
+    for (int i = 0; i < 3000; i++) {
+      Rectangle r =
+          Rectangle.of(
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * 20,
+              generator.nextDouble() * 20);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+    RTree<String> read = writeRead(rTree);
+    Assert.assertEquals(rTree.count(), read.count());
+    assertSameStructure(rTree.getRoot().get(), read.getRoot().get());
+
+    // the tree that was read can be changed like any other
+    read = RTree.add(read, splitterContext, "more", Rectangle.of(10, 10, 10, 10));
+    read = RTree.remove(read, "N0");
+    Assert.assertEquals(rTree.count(), read.count());
+  }
+
+  @Test
+  public void testEmptyAndSingleLeaf() throws IOException {
+    Assert.assertFalse(writeRead(rTree).getRoot().isPresent());
+    rTree = RTree.add(rTree, splitterContext, "one", Rectangle.of(1, 2, 3, 4));
+    RTree<String> read = writeRead(rTree);
+    assertSameStructure(rTree.getRoot().get(), read.getRoot().get());
+  }
+
+  @Test
+  public void testCornersReadBackExactly() throws IOException {
+    Map<String, Rectangle> shapes = new HashMap<>();
+    Random generator = new Random(1202);
+    for (int i = 0; i < 3000; i++) {
+      double x = generator.nextDouble() * 1000;
+      double y = generator.nextDouble() * 1000;
+      Rectangle r =
+          Rectangle.fromCorners(
+              x, y, x + generator.nextDouble() * 20, y + generator.nextDouble() * 20);
+      shapes.put("N" + i, r);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+    RTree<String> read = writeRead(rTree);
+    Node<String> root = read.getRoot().get();
+    shapes.forEach(
+        (element, bounds) ->
+            Assert.assertEquals(bounds, root.getContainingLeaf(element).getBoundsFor(element)));
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotASnapshot() throws IOException {
+    RTreeSnapshot.read(
+        new DataInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8})),
+        ElementCodec.STRING);
+  }
+
+  private RTree<String> writeRead(RTree<String> rTree) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      RTreeSnapshot.write(rTree, ElementCodec.STRING, out);
+    }
+    return RTreeSnapshot.read(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), ElementCodec.STRING);
+  }
+
+  /** the snapshot keeps the corners, so width and height may differ in the last bit */
+  private void assertSameStructure(Node<String> expected, Node<String> actual) {
+    FrozenRTreeTest.assertSameCorners(expected.getBounds(), actual.getBounds());
+    Assert.assertEquals(expected.count(), actual.count());
+    Assert.assertEquals(expected.getClass(), actual.getClass());
+    if (expected instanceof LeafNode) {
+      Map<String, Rectangle> expectedMap = ((LeafNode<String>) expected).map;
+      Map<String, Rectangle> actualMap = ((LeafNode<String>) actual).map;
+      Assert.assertEquals(expectedMap.keySet(), actualMap.keySet());
+      expectedMap.forEach(
+          (element, bounds) -> FrozenRTreeTest.assertSameCorners(bounds, actualMap.get(element)));
+    } else {
+      List<Node<String>> expectedChildren = ((InnerNode<String>) expected).getChildren();
+      List<Node<String>> actualChildren = ((InnerNode<String>) actual).getChildren();
+      Assert.assertEquals(expectedChildren.size(), actualChildren.size());
+      for (int i = 0; i < expectedChildren.size(); i++) {
+        Assert.assertSame(actual, actualChildren.get(i).getParent().get());
+        assertSameStructure(expectedChildren.get(i), actualChildren.get(i));
+      }
+    }
+  }
+}
@@ -1,6 +1,11 @@
 package com.tom.rtree;
 
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,6 +88,657 @@ public class RTreeTest {
     assertHasChildren(rTree.getRoot().get());
   }
 
+  @Test
+  public void testIndexedAddRemoveAll() {
+    rTree = RTree.createIndexed();
+    for (int i = 0; i < 1000; i++) {
+      addRandomShape();
+    }
+    Assert.assertTrue(rTree.isIndexed());
+    assertIndexed(1000);
+    List<Integer> order = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      order.add(i);
+    }
+    Collections.shuffle(order, new Random(1001));
+    for (int i = 0; i < 500; i++) {
+      rTree = RTree.remove(rTree, "N" + order.get(i));
+    }
+    assertIndexed(500);
+    Assert.assertNull(rTree.getContainingLeaf("N" + order.get(0)));
+    rTree = RTree.reinsert(rTree, splitterContext);
+    assertIndexed(500);
+    for (int i = 500; i < 1000; i++) {
+      rTree = RTree.remove(rTree, "N" + order.get(i));
+    }
+    Assert.assertFalse(rTree.getRoot().isPresent());
+    Assert.assertTrue(rTree.isIndexed());
+    addRandomShape();
+    assertIndexed(1);
+  }
+
+  @Test
+  public void testRemoveAndUpdateWithBounds() {
+    Map<String, Rectangle> shapes = new HashMap<>();
+    Random generator = new Random(1001);
+    for (int i = 0; i < 1000; i++) {
+      Rectangle r =
+          Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+      shapes.put("N" + i, r);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+    for (int i = 0; i < 500; i++) {
+      rTree = RTree.remove(rTree, "N" + i, shapes.remove("N" + i));
+    }
+    Assert.assertEquals(500, rTree.count());
+    // bounds that do not match leave the tree unchanged
+    rTree = RTree.remove(rTree, "N500", Rectangle.of(-100, -100, 10, 10));
+    Assert.assertEquals(500, rTree.count());
+
+    for (int i = 500; i < 1000; i++) {
+      Rectangle newBounds = shapes.get("N" + i).offset(5, -5);
+      rTree =
+          RTree.update(rTree, splitterContext, "N" + i, shapes.put("N" + i, newBounds), newBounds);
+    }
+    Assert.assertEquals(500, rTree.count());
+    Node<String> root = rTree.getRoot().get();
+    for (Map.Entry<String, Rectangle> entry : shapes.entrySet()) {
+      Assert.assertSame(
+          root.getContainingLeaf(entry.getKey()),
+          root.getContainingLeaf(entry.getKey(), entry.getValue()));
+      Assert.assertEquals(
+          entry.getValue(), root.getContainingLeaf(entry.getKey()).getBoundsFor(entry.getKey()));
+    }
+    for (String element : shapes.keySet()) {
+      rTree = RTree.remove(rTree, element, shapes.get(element));
+    }
+    Assert.assertFalse(rTree.getRoot().isPresent());
+  }
+
+  @Test
+  public void testUpdateWithStaleBounds() {
+    Rectangle stale = Rectangle.of(-100, -100, 10, 10);
+    Rectangle moved = Rectangle.of(500, 500, 10, 10);
+    for (RTree<String> empty :
+        List.of(
+            RTree.<String>create(),
+            RTree.<String>createIndexed(),
+            RTree.<String>createPersistent())) {
+      rTree = empty;
+      Random generator = new Random(1005);
+      for (int i = 0; i < 100; i++) {
+        rTree =
+            RTree.add(
+                rTree,
+                splitterContext,
+                "N" + i,
+                Rectangle.of(
+                    generator.nextDouble() * width, generator.nextDouble() * height, 10, 10));
+      }
+      // the old bounds miss, but the element is still moved rather than added twice
+      rTree = RTree.update(rTree, splitterContext, "N5", stale, moved);
+      assertCounts(100);
+      Assert.assertEquals(moved, rTree.getContainingLeaf("N5").getBoundsFor("N5"));
+      // an element that is not in the tree is added
+      rTree = RTree.update(rTree, splitterContext, "missing", stale, moved);
+      assertCounts(101);
+    }
+
+    ConcurrentRTree<String> concurrent = ConcurrentRTree.create(splitterContext);
+    VersionedRTree<String> versioned = VersionedRTree.create(splitterContext);
+    for (int i = 0; i < 100; i++) {
+      concurrent.add("N" + i, Rectangle.of(i * 5, i * 5, 10, 10));
+      versioned.add("N" + i, Rectangle.of(i * 5, i * 5, 10, 10));
+    }
+    concurrent.update("N5", stale, moved);
+    versioned.update("N5", stale, moved);
+    Assert.assertEquals(100, concurrent.count());
+    Assert.assertEquals(100, versioned.count());
+  }
+
+  @Test
+  public void testCounts() {
+    Map<String, Rectangle> shapes = new HashMap<>();
+    Random generator = new Random(1002);
+    for (int i = 0; i < 2000; i++) {
+      Rectangle r =
+          Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+      shapes.put("N" + i, r);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+    assertCounts(2000);
+    for (int i = 0; i < 2000; i += 3) {
+      rTree = RTree.remove(rTree, "N" + i);
+    }
+    assertCounts(1333);
+    for (int i = 1; i < 2000; i += 3) {
+      rTree = RTree.remove(rTree, "N" + i, shapes.get("N" + i));
+    }
+    assertCounts(666);
+    List<Map.Entry<String, Rectangle>> entries = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      entries.add(Map.entry("B" + i, shapes.get("N" + i)));
+    }
+    rTree = RTree.bulkAdd(rTree, splitterContext, entries);
+    assertCounts(2666);
+  }
+
+  @Test
+  public void testNearest() {
+    Map<String, Rectangle> shapes = new HashMap<>();
+    Random generator = new Random(1004);
+    for (int i = 0; i < 2000; i++) {
+      Rectangle r =
+          Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+      shapes.put("N" + i, r);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+    for (int i = 0; i < 50; i++) {
+      Point p = Point.of(generator.nextDouble() * width, generator.nextDouble() * height);
+      List<Double> distances = new ArrayList<>();
+      for (Rectangle r : shapes.values()) {
+        distances.add(Circle.squaredDistance(p, r));
+      }
+      Collections.sort(distances);
+
+      List<String> nearest = rTree.nearest(p, 10);
+      Assert.assertEquals(10, nearest.size());
+      for (int j = 0; j < nearest.size(); j++) {
+        Assert.assertEquals(
+            distances.get(j), Circle.squaredDistance(p, shapes.get(nearest.get(j))), 0);
+      }
+      List<String> near = rTree.nearest(p, 10, 20);
+      long expected = distances.stream().limit(10).filter(d -> d <= 20 * 20).count();
+      Assert.assertEquals(expected, near.size());
+      for (int j = 0; j < near.size(); j++) {
+        Assert.assertEquals(
+            distances.get(j), Circle.squaredDistance(p, shapes.get(near.get(j))), 0);
+      }
+    }
+    Assert.assertEquals(2000, rTree.nearest(Point.ORIGIN, 5000).size());
+    Assert.assertTrue(RTree.<String>create().nearest(Point.ORIGIN, 5).isEmpty());
+  }
+
+  @Test
+  public void testVisitors() {
+    Map<String, Rectangle> shapes = new HashMap<>();
+    Random generator = new Random(1005);
+    for (int i = 0; i < 2000; i++) {
+      Rectangle r =
+          Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 20, 20);
+      shapes.put("N" + i, r);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+    Rectangle window = Rectangle.of(100, 100, 300, 300);
+    Set<String> visited = new HashSet<>();
+    Assert.assertTrue(
+        rTree.visitVisibleElements(
+            window,
+            (element, bounds) -> {
+              Assert.assertEquals(shapes.get(element), bounds);
+              return visited.add(element);
+            }));
+    Assert.assertEquals(rTree.getRoot().get().getVisibleElements(new HashSet<>(), window), visited);
+
+    List<String> firstFive = new ArrayList<>();
+    Assert.assertFalse(
+        rTree.visitVisibleElements(
+            window, (element, bounds) -> firstFive.add(element) && firstFive.size() < 5));
+    Assert.assertEquals(5, firstFive.size());
+
+    Point p = Point.of(500, 500);
+    Set<String> containing = new HashSet<>();
+    rTree.visitContainingElements(p, (element, bounds) -> containing.add(element));
+    for (Map.Entry<String, Rectangle> entry : shapes.entrySet()) {
+      Assert.assertEquals(entry.getValue().contains(p), containing.contains(entry.getKey()));
+    }
+    Assert.assertTrue(RTree.<String>create().visitVisibleElements(window, (e, b) -> false));
+  }
+
+  @Test
+  public void testQueryStream() {
+    Map<String, Rectangle> shapes = new HashMap<>();
+    Random generator = new Random(1006);
+    for (int i = 0; i < 5000; i++) {
+      Rectangle r =
+          Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+      shapes.put("N" + i, r);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+    Rectangle window = Rectangle.of(200, 100, 500, 600);
+    Set<String> expected = rTree.getRoot().get().getVisibleElements(new HashSet<>(), window);
+    Set<String> sequential = new HashSet<>();
+    rTree
+        .query(window)
+        .forEach(
+            entry -> {
+              Assert.assertEquals(shapes.get(entry.getKey()), entry.getValue());
+              Assert.assertTrue(sequential.add(entry.getKey()));
+            });
+    Assert.assertEquals(expected, sequential);
+    List<String> parallel =
+        rTree.query(window).parallel().map(Map.Entry::getKey).collect(Collectors.toList());
+    Assert.assertEquals(expected.size(), parallel.size());
+    Assert.assertEquals(expected, new HashSet<>(parallel));
+    Assert.assertEquals(3, rTree.query(window).limit(3).count());
+    Assert.assertEquals(
+        shapes.size(), rTree.query(Rectangle.of(0, 0, width + 10, height + 10)).parallel().count());
+    Assert.assertEquals(0, RTree.<String>create().query(window).count());
+  }
+
+  @Test
+  public void testParallelQuery() {
+    Random generator = new Random(1007);
+    for (int i = 0; i < 20000; i++) {
+      Rectangle r =
+          Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 5, 5);
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+    }
+    Rectangle window = Rectangle.of(100, 0, 600, 900);
+    Set<String> expected = rTree.getRoot().get().getVisibleElements(new HashSet<>(), window);
+    List<String> parallel = rTree.getVisibleElementsParallel(window);
+    Assert.assertEquals(expected.size(), parallel.size());
+    Assert.assertEquals(expected, new HashSet<>(parallel));
+    // a small threshold forks all the way down to the leaves
+    parallel = rTree.getVisibleElementsParallel(window, ForkJoinPool.commonPool(), 1);
+    Assert.assertEquals(expected.size(), parallel.size());
+    Assert.assertEquals(expected, new HashSet<>(parallel));
+    Assert.assertTrue(rTree.getVisibleElementsParallel(Rectangle.of(-100, -100, 10, 10)).isEmpty());
+  }
+
+  @Test
+  public void testPersistentSnapshots() {
+    rTree = RTree.createPersistent();
+    Map<String, Rectangle> shapes = new HashMap<>();
+    Random generator = new Random(1008);
+    List<RTree<String>> snapshots = new ArrayList<>();
+    List<Set<String>> contents = new ArrayList<>();
+    Rectangle all = Rectangle.of(-10, -10, width + 20, height + 20);
+    for (int i = 0; i < 2000; i++) {
+      Rectangle r =
+          Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+      shapes.put("N" + i, r);
+      RTree<String> previous = rTree;
+      rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+      Assert.assertNotSame(previous, rTree);
+      Assert.assertTrue(rTree.isPersistent());
+      if (i % 100 == 0) {
+        snapshots.add(rTree);
+        contents.add(rTree.getRoot().get().getVisibleElements(new HashSet<>(), all));
+      }
+    }
+    for (int i = 0; i < 2000; i += 2) {
+      rTree = RTree.remove(rTree, "N" + i);
+    }
+    for (int i = 1; i < 1000; i += 2) {
+      rTree = RTree.remove(rTree, "N" + i, shapes.get("N" + i));
+    }
+    Assert.assertEquals(500, rTree.count());
+    assertCounts(500);
+    for (int i = 0; i < snapshots.size(); i++) {
+      RTree<String> snapshot = snapshots.get(i);
+      Assert.assertEquals(contents.get(i).size(), snapshot.count());
+      Assert.assertEquals(
+          contents.get(i), snapshot.getRoot().get().getVisibleElements(new HashSet<>(), all));
+    }
+    // a missing element leaves the same version
+    Assert.assertSame(rTree, RTree.remove(rTree, "N0"));
+    for (int i = 1001; i < 2000; i += 2) {
+      rTree = RTree.remove(rTree, "N" + i);
+    }
+    Assert.assertFalse(rTree.getRoot().isPresent());
+    Assert.assertTrue(rTree.isPersistent());
+  }
+
+  @Test
+  public void testPersistentParents() {
+    // a small fan-out, so that the path copies split inner nodes
+    SplitterContext<String> smallContext =
+        SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>(), RTreeConfig.of(4));
+    rTree = RTree.createPersistent();
+    Random generator = new Random(1009);
+    List<RTree<String>> versions = new ArrayList<>();
+    Map<Node<String>, Node<String>> parents = new IdentityHashMap<>();
+    for (int i = 0; i < 700; i++) {
+      if (i < 500) {
+        Rectangle r =
+            Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+        rTree = RTree.add(rTree, smallContext, "N" + i, r);
+      } else {
+        rTree = RTree.remove(rTree, "N" + generator.nextInt(500));
+      }
+      // the nodes made for this version have the node that holds them as parent
+      recordParents(rTree.getRoot().get(), parents);
+      if (i % 35 == 0) {
+        versions.add(rTree);
+      }
+    }
+    // and making later versions did not change them
+    for (RTree<String> version : versions) {
+      assertParents(version.getRoot().get(), parents);
+    }
+  }
+
+  private static void recordParents(Node<String> node, Map<Node<String>, Node<String>> parents) {
+    for (TreeNode kid : node.getChildren()) {
+      Node<String> child = (Node<String>) kid;
+      if (!parents.containsKey(child)) {
+        Assert.assertSame(node, child.getParent().get());
+        parents.put(child, node);
+        recordParents(child, parents);
+      }
+    }
+  }
+
+  private static void assertParents(Node<String> node, Map<Node<String>, Node<String>> parents) {
+    for (TreeNode kid : node.getChildren()) {
+      Node<String> child = (Node<String>) kid;
+      Assert.assertSame(parents.get(child), child.getParent().get());
+      assertParents(child, parents);
+    }
+  }
+
+  @Test
+  public void testApplyBatch() {
+    for (RTree<String> empty :
+        List.of(
+            RTree.<String>create(),
+            RTree.<String>createIndexed(),
+            RTree.<String>createPersistent())) {
+      rTree = empty;
+      Map<String, Rectangle> shapes = new HashMap<>();
+      Random generator = new Random(1020);
+      for (int i = 0; i < 3000; i++) {
+        Rectangle r =
+            Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+        shapes.put("N" + i, r);
+        rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+      }
+      Batch<String> batch = Batch.create();
+      for (int i = 0; i < 1000; i++) {
+        batch.remove("N" + i, shapes.remove("N" + i));
+      }
+      for (int i = 1000; i < 1500; i++) {
+        batch.remove("N" + i);
+        shapes.remove("N" + i);
+      }
+      for (int i = 1500; i < 2500; i++) {
+        Rectangle moved =
+            Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+        batch.move("N" + i, shapes.put("N" + i, moved), moved);
+      }
+      for (int i = 3000; i < 3500; i++) {
+        Rectangle r =
+            Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+        shapes.put("N" + i, r);
+        batch.add("N" + i, r);
+      }
+      // old bounds that miss still move the element rather than add it twice
+      Rectangle moved = Rectangle.of(500, 500, 10, 10);
+      shapes.put("N2500", moved);
+      batch.move("N2500", Rectangle.of(-100, -100, 10, 10), moved);
+      batch.remove("missing");
+      Assert.assertEquals(4003, batch.size());
+      rTree = RTree.apply(rTree, splitterContext, batch);
+
+      Assert.assertEquals(shapes.size(), rTree.count());
+      assertCounts(shapes.size());
+      assertHasChildren(rTree.getRoot().get());
+      assertTightBounds(rTree.getRoot().get());
+      if (rTree.isIndexed()) {
+        assertIndexed(shapes.size());
+      }
+      for (Map.Entry<String, Rectangle> entry : shapes.entrySet()) {
+        Assert.assertEquals(
+            entry.getValue(), rTree.getContainingLeaf(entry.getKey()).map.get(entry.getKey()));
+      }
+
+      // remove everything in one batch
+      Batch<String> clear = Batch.create();
+      shapes.forEach(clear::remove);
+      rTree = RTree.apply(rTree, splitterContext, clear);
+      Assert.assertFalse(rTree.getRoot().isPresent());
+    }
+  }
+
+  @Test
+  public void testApplyBatchCoalesces() {
+    for (RTree<String> empty :
+        List.of(
+            RTree.<String>create(),
+            RTree.<String>createIndexed(),
+            RTree.<String>createPersistent())) {
+      rTree = empty;
+      Random generator = new Random(1023);
+      for (int i = 0; i < 500; i++) {
+        Rectangle r =
+            Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+        rTree = RTree.add(rTree, splitterContext, "E" + i, r);
+      }
+      Rectangle r0 = rTree.getContainingLeaf("E1").getBoundsFor("E1");
+      Rectangle r1 = Rectangle.of(-50, -50, 10, 10);
+      Rectangle r2 = Rectangle.of(width / 2, height / 2, 1, 1);
+      Batch<String> batch =
+          Batch.<String>create()
+              .move("E1", r0, r1)
+              .move("E1", r1, r2)
+              .add("added", r1)
+              .move("added", r1, r2)
+              .add("gone", r1)
+              .remove("gone")
+              .remove("E2")
+              .add("E2", r1)
+              .remove("E2", r1);
+      // E1 and E2 are removed once, E1 and added are added once
+      Assert.assertEquals(4, batch.size());
+      rTree = RTree.apply(rTree, splitterContext, batch);
+
+      Assert.assertEquals(500, rTree.count());
+      assertCounts(500);
+      assertTightBounds(rTree.getRoot().get());
+      Node<String> root = rTree.getRoot().get();
+      Assert.assertTrue(
+          root.getVisibleElements(new HashSet<>(), r2).containsAll(Set.of("E1", "added")));
+      Assert.assertEquals(r2, rTree.getContainingLeaf("E1").getBoundsFor("E1"));
+      Assert.assertTrue(root.getVisibleElements(new HashSet<>(), r1).isEmpty());
+      Assert.assertNull(root.getContainingLeaf("E2"));
+      Assert.assertNull(root.getContainingLeaf("gone"));
+    }
+  }
+
+  @Test
+  public void testMove() {
+    for (RTree<String> empty :
+        List.of(
+            RTree.<String>create(),
+            RTree.<String>createIndexed(),
+            RTree.<String>createPersistent())) {
+      rTree = empty;
+      Map<String, Rectangle> shapes = new HashMap<>();
+      Random generator = new Random(1021);
+      for (int i = 0; i < 2000; i++) {
+        Rectangle r =
+            Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 10, 10);
+        shapes.put("N" + i, r);
+        rTree = RTree.add(rTree, splitterContext, "N" + i, r);
+      }
+      for (int tick = 0; tick < 10; tick++) {
+        for (int i = 0; i < 2000; i++) {
+          String element = "N" + i;
+          // most elements drift a little, a few jump across the tree
+          Rectangle moved =
+              i % 50 == tick
+                  ? Rectangle.of(
+                      generator.nextDouble() * width, generator.nextDouble() * height, 10, 10)
+                  : shapes
+                      .get(element)
+                      .offset(generator.nextDouble() * 4 - 2, generator.nextDouble() * 4 - 2);
+          shapes.put(element, moved);
+          rTree = RTree.move(rTree, splitterContext, element, moved, tick % 2 == 0 ? 0 : 5);
+        }
+        assertCounts(2000);
+        assertTightBounds(rTree.getRoot().get());
+      }
+      if (rTree.isIndexed()) {
+        assertIndexed(2000);
+      }
+      Node<String> root = rTree.getRoot().get();
+      for (Map.Entry<String, Rectangle> entry : shapes.entrySet()) {
+        Assert.assertEquals(
+            entry.getValue(), root.getContainingLeaf(entry.getKey()).getBoundsFor(entry.getKey()));
+      }
+      Rectangle window = Rectangle.of(300, 300, 200, 200);
+      Set<String> expected = new HashSet<>();
+      shapes.forEach(
+          (element, bounds) -> {
+            if (window.intersects(bounds)) {
+              expected.add(element);
+            }
+          });
+      Assert.assertEquals(expected, root.getVisibleElements(new HashSet<>(), window));
+      // moving an element that is not in the tree adds it
+      rTree = RTree.move(rTree, splitterContext, "missing", Rectangle.of(5, 5, 1, 1));
+      Assert.assertEquals(2001, rTree.count());
+    }
+  }
+
+  @Test
+  public void testMoveSmallFanOut() {
+    // with 4 entries per node a reinsert below an ancestor often splits the ancestor too
+    SplitterContext<String> smallContext =
+        SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>(), RTreeConfig.of(4));
+    for (int seed = 0; seed < 6; seed++) {
+      for (RTree<String> empty : List.of(RTree.<String>create(), RTree.<String>createIndexed())) {
+        rTree = empty;
+        Map<String, Rectangle> shapes = new HashMap<>();
+        Random generator = new Random(1022 + seed);
+        for (int i = 0; i < 300; i++) {
+          Rectangle r =
+              Rectangle.of(generator.nextDouble() * 300, generator.nextDouble() * 300, 10, 10);
+          shapes.put("N" + i, r);
+          rTree = RTree.add(rTree, smallContext, "N" + i, r);
+        }
+        for (int tick = 0; tick < 3; tick++) {
+          for (int i = 0; i < 300; i++) {
+            String element = "N" + i;
+            Rectangle moved =
+                shapes
+                    .get(element)
+                    .offset(generator.nextDouble() * 16 - 8, generator.nextDouble() * 16 - 8);
+            shapes.put(element, moved);
+            rTree = RTree.move(rTree, smallContext, element, moved, 5);
+            Node<String> root = rTree.getRoot().get();
+            assertTightBounds(root);
+            Assert.assertEquals(300, assertCounts(root));
+            Assert.assertTrue(
+                root.getVisibleElements(new HashSet<>(), Rectangle.of(moved.x, moved.y, 0, 0))
+                    .contains(element));
+          }
+        }
+        if (rTree.isIndexed()) {
+          assertIndexed(300);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInsertMakesNoGarbage() {
+    Assume.assumeTrue(
+        ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads.isThreadAllocatedMemoryEnabled());
+    long thread = Thread.currentThread().getId();
+    Random generator = new Random(1025);
+    for (int i = 0; i < 20000; i++) {
+      rTree =
+          RTree.add(
+              rTree,
+              splitterContext,
+              "N" + i,
+              Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 5, 5));
+    }
+    long overhead = threads.getThreadAllocatedBytes(thread);
+    overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+    long[] bytes = new long[2000];
+    for (int i = 0; i < bytes.length; i++) {
+      String element = "M" + i;
+      Rectangle bounds =
+          Rectangle.of(generator.nextDouble() * width, generator.nextDouble() * height, 5, 5);
+      long before = threads.getThreadAllocatedBytes(thread);
+      rTree = RTree.add(rTree, splitterContext, element, bounds);
+      bytes[i] = threads.getThreadAllocatedBytes(thread) - before - overhead;
+    }
+    Arrays.sort(bytes);
+    // an insert that does not split only makes the map entry that holds the new element
+    Assert.assertTrue(bytes[bytes.length / 2] <= 48);
+    assertCounts(22000);
+    assertTightBounds(rTree.getRoot().get());
+  }
+
+  /** the bounds of each InnerNode are the union of the bounds of its children */
+  private void assertTightBounds(TreeNode parent) {
+    if (parent instanceof InnerNode) {
+      Rectangle union = null;
+      for (TreeNode child : parent.getChildren()) {
+        Rectangle bounds = ((Node<String>) child).getBounds();
+        union = union == null ? bounds : union.union(bounds);
+        assertTightBounds(child);
+      }
+      Assert.assertEquals(union, ((Node<String>) parent).getBounds());
+    }
+  }
+
+  /** the cached counts match the elements in the tree and countIn matches getVisibleElements */
+  private void assertCounts(int expectedCount) {
+    Assert.assertEquals(expectedCount, rTree.count());
+    assertCounts(rTree.getRoot().get());
+    Random generator = new Random(1003);
+    for (int i = 0; i < 50; i++) {
+      Rectangle window =
+          Rectangle.of(
+              generator.nextDouble() * width,
+              generator.nextDouble() * height,
+              generator.nextDouble() * width / 2,
+              generator.nextDouble() * height / 2);
+      Assert.assertEquals(
+          rTree.getRoot().get().getVisibleElements(new HashSet<>(), window).size(),
+          rTree.countIn(window));
+    }
+    Assert.assertEquals(expectedCount, rTree.countIn(Rectangle.of(0, 0, width + 10, height + 10)));
+  }
+
+  private int assertCounts(TreeNode parent) {
+    if (parent instanceof LeafNode) {
+      return ((LeafNode<String>) parent).size();
+    }
+    int count = 0;
+    for (TreeNode child : parent.getChildren()) {
+      count += assertCounts(child);
+    }
+    Assert.assertEquals(count, ((Node<String>) parent).count());
+    return count;
+  }
+
+  /** every element in the tree is indexed to the LeafNode that holds it */
+  private void assertIndexed(int expectedCount) {
+    Assert.assertEquals(expectedCount, rTree.count());
+    Node<String> root = rTree.getRoot().get();
+    assertIndexed(root);
+  }
+
+  private void assertIndexed(TreeNode parent) {
+    if (parent instanceof LeafNode) {
+      LeafNode<String> leafNode = (LeafNode<String>) parent;
+      for (String element : leafNode.getKeys()) {
+        Assert.assertSame(leafNode, rTree.getContainingLeaf(element));
+      }
+    } else {
+      parent.getChildren().forEach(this::assertIndexed);
+    }
+  }
+
   /**
    * all nodes have children (none are empty)
    *
@@ -0,0 +1,129 @@
+package com.tom.rtree;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpatialJoinTest {
+
+  SplitterContext<String> splitterContext =
+      SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+
+  private Map<String, Rectangle> shapes(String prefix, int count, double size, long seed) {
+    Map<String, Rectangle> shapes = new HashMap<>();
+    Random generator = new Random(seed);
+    for (int i = 0; i < count; i++) {
+      shapes.put(
+          prefix + i,
+          Rectangle.of(
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * 1000,
+              generator.nextDouble() * size,
+              generator.nextDouble() * size));
+    }
+    return shapes;
+  }
+
+  private RTree<String> tree(Map<String, Rectangle> shapes) {
+    RTree<String> rtree = RTree.create();
+    for (Map.Entry<String, Rectangle> entry : shapes.entrySet()) {
+      rtree = RTree.add(rtree, splitterContext, entry);
+    }
+    return rtree;
+  }
+
+  @Test
+  public void testJoin() {
+    Map<String, Rectangle> sensors = shapes("S", 3000, 10, 2201);
+    // fewer, bigger zones make a shorter tree than the sensors
+    Map<String, Rectangle> zones = shapes("Z", 200, 60, 2202);
+    RTree<String> sensorTree = tree(sensors);
+    RTree<String> zoneTree = tree(zones);
+
+    Set<String> expected = new HashSet<>();
+    sensors.forEach(
+        (sensor, sensorBounds) ->
+            zones.forEach(
+                (zone, zoneBounds) -> {
+                  if (sensorBounds.intersects(zoneBounds)) {
+                    expected.add(sensor + ":" + zone);
+                  }
+                }));
+    Assert.assertFalse(expected.isEmpty());
+
+    List<String> pairs = new ArrayList<>();
+    RTree.join(sensorTree, zoneTree, (sensor, zone) -> pairs.add(sensor + ":" + zone));
+    Assert.assertEquals(expected.size(), pairs.size());
+    Assert.assertEquals(expected, new HashSet<>(pairs));
+
+    pairs.clear();
+    RTree.join(zoneTree, sensorTree, (zone, sensor) -> pairs.add(sensor + ":" + zone));
+    Assert.assertEquals(expected, new HashSet<>(pairs));
+
+    Set<String> parallel = ConcurrentHashMap.newKeySet();
+    RTree.joinParallel(
+        sensorTree,
+        zoneTree,
+        (sensor, zone) -> Assert.assertTrue(parallel.add(sensor + ":" + zone)),
+        ForkJoinPool.commonPool());
+    Assert.assertEquals(expected, parallel);
+  }
+
+  @Test
+  public void testSelfJoin() {
+    Map<String, Rectangle> shapes = shapes("N", 3000, 25, 2301);
+    // touching edges count as intersecting
+    shapes.put("E1", Rectangle.of(2000, 2000, 10, 10));
+    shapes.put("E2", Rectangle.of(2010, 2000, 10, 10));
+    RTree<String> rtree = tree(shapes);
+
+    List<String> names = new ArrayList<>(shapes.keySet());
+    Set<String> expected = new HashSet<>();
+    for (int i = 0; i < names.size(); i++) {
+      for (int j = i + 1; j < names.size(); j++) {
+        if (shapes.get(names.get(i)).intersects(shapes.get(names.get(j)))) {
+          expected.add(pair(names.get(i), names.get(j)));
+        }
+      }
+    }
+    Assert.assertTrue(expected.contains(pair("E1", "E2")));
+
+    List<String> pairs = new ArrayList<>();
+    rtree.selfJoin(
+        (a, b) -> {
+          Assert.assertNotEquals(a, b);
+          pairs.add(pair(a, b));
+        });
+    Assert.assertEquals(expected.size(), pairs.size());
+    Assert.assertEquals(expected, new HashSet<>(pairs));
+
+    pairs.clear();
+    RTree.<String>create().selfJoin((a, b) -> pairs.add(pair(a, b)));
+    tree(Map.of("A", Rectangle.of(0, 0, 1, 1))).selfJoin((a, b) -> pairs.add(pair(a, b)));
+    Assert.assertTrue(pairs.isEmpty());
+  }
+
+  private static String pair(String a, String b) {
+    return a.compareTo(b) < 0 ? a + ":" + b : b + ":" + a;
+  }
+
+  @Test
+  public void testJoinEmptyAndLeafRoots() {
+    RTree<String> one = tree(Map.of("A", Rectangle.of(0, 0, 10, 10)));
+    RTree<String> many = tree(shapes("B", 500, 20, 2203));
+    List<String> pairs = new ArrayList<>();
+    RTree.join(RTree.<String>create(), many, (a, b) -> pairs.add(a + b));
+    RTree.join(many, RTree.<String>create(), (a, b) -> pairs.add(a + b));
+    Assert.assertTrue(pairs.isEmpty());
+
+    RTree.join(one, many, (a, b) -> pairs.add(b));
+    Set<String> expected =
+        many.getRoot().get().getVisibleElements(new HashSet<>(), Rectangle.of(0, 0, 10, 10));
+    Assert.assertEquals(expected, new HashSet<>(pairs));
+    Set<String> parallel = ConcurrentHashMap.newKeySet();
+    RTree.joinParallel(one, many, (a, b) -> parallel.add(b));
+    Assert.assertEquals(expected, parallel);
+  }
+}
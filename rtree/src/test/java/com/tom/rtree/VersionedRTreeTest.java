@@ -0,0 +1,109 @@
+package com.tom.rtree;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VersionedRTreeTest {
+
+  SplitterContext<String> splitterContext =
+      SplitterContext.of(new RStarLeafSplitter<>(), new RStarSplitter<>());
+
+  @Test
+  public void testSnapshotsDoNotChange() {
+    VersionedRTree<String> tree = VersionedRTree.create(splitterContext);
+    Assert.assertEquals(0, tree.count());
+    Assert.assertNull(tree.getPickedObject(Point.of(1, 1)));
+    for (int i = 0; i < 100; i++) {
+      tree.add("A" + i, Rectangle.of(i * 10, i * 10, 5, 5));
+    }
+    RTree<String> before = tree.snapshot();
+    long version = tree.getVersion();
+    Assert.assertEquals(100, version);
+
+    List<Map.Entry<String, Rectangle>> batch = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      batch.add(Map.entry("B" + i, Rectangle.of(i, 2000, 5, 5)));
+    }
+    tree.bulkAdd(batch);
+    tree.remove("A0", Rectangle.of(0, 0, 5, 5));
+    tree.update("A1", Rectangle.of(10, 10, 5, 5), Rectangle.of(3000, 3000, 5, 5));
+
+    Assert.assertEquals(100, before.count());
+    Assert.assertEquals("A0", before.getPickedObject(Point.of(2, 2)));
+    Assert.assertEquals(1099, tree.count());
+    Assert.assertNull(tree.getPickedObject(Point.of(2, 2)));
+    Assert.assertEquals("A1", tree.getPickedObject(Point.of(3002, 3002)));
+    Assert.assertEquals(version + 3, tree.getVersion());
+
+    // removing an element that is not there publishes nothing
+    tree.remove("missing");
+    Assert.assertEquals(version + 3, tree.getVersion());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNotPersistent() {
+    VersionedRTree.of(RTree.create(), splitterContext);
+  }
+
+  @Test
+  public void testReadersDuringBatches() throws Exception {
+    VersionedRTree<String> tree = VersionedRTree.create(splitterContext);
+    Random generator = new Random(1901);
+    Map<String, Rectangle> shapes = new ConcurrentHashMap<>();
+    for (int i = 0; i < 20000; i++) {
+      shapes.put(
+          "N" + i,
+          Rectangle.of(generator.nextDouble() * 1000, generator.nextDouble() * 1000, 10, 10));
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    List<Future<?>> readers = new ArrayList<>();
+    for (int r = 0; r < 2; r++) {
+      readers.add(
+          executor.submit(
+              () -> {
+                while (writing.get()) {
+                  // every published version holds whole batches of 1000
+                  RTree<String> snapshot = tree.snapshot();
+                  Assert.assertEquals(0, snapshot.count() % 1000);
+                  Rectangle window = Rectangle.of(450, 450, 100, 100);
+                  for (String element : tree.getVisibleElements(window)) {
+                    Assert.assertTrue(window.intersects(shapes.get(element)));
+                  }
+                }
+                return null;
+              }));
+    }
+    Future<?> writer =
+        executor.submit(
+            () -> {
+              List<Map.Entry<String, Rectangle>> batch = new ArrayList<>();
+              for (int i = 0; i < 20000; i++) {
+                batch.add(Map.entry("N" + i, shapes.get("N" + i)));
+                if (batch.size() == 1000) {
+                  if (i < 10000) {
+                    tree.addAll(batch);
+                  } else {
+                    tree.bulkAdd(batch);
+                  }
+                  batch = new ArrayList<>();
+                }
+              }
+              return null;
+            });
+    try {
+      writer.get(60, TimeUnit.SECONDS);
+    } finally {
+      writing.set(false);
+    }
+    for (Future<?> reader : readers) {
+      reader.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+    Assert.assertEquals(20000, tree.count());
+    Assert.assertEquals(20, tree.getVersion());
+  }
+}